@@ -0,0 +1,68 @@
+package com.craftinginterpreters.lox;
+
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.Map;
+
+// small representative Lox programs for the JMH benchmarks, one per kind of work the interpreter does.
+final class BenchmarkPrograms {
+  static final Map<String, String> PROGRAMS = Map.of(
+      "recursion",
+      "fun fib(n) { if (n < 2) return n; return fib(n - 1) + fib(n - 2); }\n" +
+      "var result = fib(18);\n",
+
+      "closures",
+      "fun counter() { var i = 0; fun count() { i = i + 1; return i; } return count; }\n" +
+      "fun adder(n) { return fun (x) { return x + n; }; }\n" +
+      "var total = 0;\n" +
+      "for (var i = 0; i < 500; i = i + 1) {\n" +
+      "  var c = counter();\n" +
+      "  c(); c();\n" +
+      "  total = adder(i)(c());\n" +
+      "}\n",
+
+      "classes",
+      "class Point {\n" +
+      "  init(x, y) { this.x = x; this.y = y; }\n" +
+      "  add(other) { return Point(this.x + other.x, this.y + other.y); }\n" +
+      "  length() { return this.x * this.x + this.y * this.y; }\n" +
+      "}\n" +
+      "var p = Point(0, 0);\n" +
+      "for (var i = 0; i < 2000; i = i + 1) { p = p.add(Point(1, 2)); }\n" +
+      "var result = p.length();\n",
+
+      "strings",
+      "var s = \"\";\n" +
+      "for (var i = 0; i < 300; i = i + 1) {\n" +
+      "  s = s + \"line \" + i + \"\\n\";\n" +
+      "}\n" +
+      "var same = 0;\n" +
+      "for (var i = 0; i < 1000; i = i + 1) { if (\"abc\" + i == \"abc\" + i) same = same + 1; }\n",
+
+      "loops",
+      "var sum = 0;\n" +
+      "for (var i = 0; i < 5000; i = i + 1) {\n" +
+      "  var j = 0;\n" +
+      "  while (j < 3) { sum = sum + i * j; j = j + 1; }\n" +
+      "  if (sum > 1000000) sum = sum - 1000000;\n" +
+      "}\n");
+
+  // fails the benchmark on any diagnostic, since a program with errors measures the wrong thing.
+  static final ErrorReporter STRICT = new ErrorReporter() {
+    @Override
+    public void report(int line, String where, String message) {
+      throw new IllegalStateException("[line " + line + "] Error" + where + ": " + message);
+    }
+
+    @Override
+    public void runtimeError(RuntimeError error) {
+      throw new IllegalStateException(error.getMessage() + "\n[line " + error.token.line + "]");
+    }
+  };
+
+  static PrintWriter nullOutput() {
+    return new PrintWriter(Writer.nullWriter());
+  }
+
+  private BenchmarkPrograms() {}
+}
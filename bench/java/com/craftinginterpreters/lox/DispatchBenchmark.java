@@ -0,0 +1,59 @@
+package com.craftinginterpreters.lox;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// visitor vs. instanceof dispatch in the Interpreter (see Interpreter.PATTERN_DISPATCH). the switch is a static
+// final read at class load, so each variant needs its own fork.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@State(Scope.Thread)
+public class DispatchBenchmark {
+  @Param({"recursion", "classes", "loops"})
+  public String program;
+
+  private List<Stmt> statements;
+  private Map<Expr, ResolvedVarInfo> locals;
+
+  @Setup
+  public void setup() {
+    String source = BenchmarkPrograms.PROGRAMS.get(program);
+    List<Token> tokens = new Scanner(source, 1, BenchmarkPrograms.STRICT).scanTokens();
+    statements = new Parser(tokens, false, BenchmarkPrograms.STRICT).parse();
+    locals = new HashMap<>();
+    new Resolver(locals, BenchmarkPrograms.STRICT).resolve(statements);
+  }
+
+  @Benchmark
+  @Fork(1)
+  public Map<String, Object> visitor() {
+    return run();
+  }
+
+  @Benchmark
+  @Fork(value = 1, jvmArgsAppend = "-Dlox.dispatch=pattern")
+  public Map<String, Object> pattern() {
+    return run();
+  }
+
+  private Map<String, Object> run() {
+    Interpreter interpreter = new Interpreter(locals, BenchmarkPrograms.STRICT, BenchmarkPrograms.nullOutput());
+    interpreter.interpret(statements);
+    return interpreter.globals;
+  }
+}
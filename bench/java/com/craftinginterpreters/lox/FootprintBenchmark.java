@@ -0,0 +1,110 @@
+package com.craftinginterpreters.lox;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.ref.Reference;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+// retained heap per runtime object (make footprint_benchmark). each construct is built N times by a Lox program
+// that keeps all of them reachable from a global, and the heap used after forced GCs is compared with what it was
+// before the run, with the program's AST already in memory. so the numbers include everything an object drags
+// along (an instance's field map, a closure's frame), which is what layout changes should be judged by.
+//
+// usage: FootprintBenchmark [N]
+class FootprintBenchmark {
+  private static final MemoryMXBean MEMORY = ManagementFactory.getMemoryMXBean();
+
+  // name, what's counted, and a program building N of them (%d is N).
+  private static final String[][] CONSTRUCTS = {
+      {"instance, 1 field", "instance",
+       "class Node {}\n" +
+       "var head = nil;\n" +
+       "for (var i = 0; i < %d; i = i + 1) { var node = Node(); node.next = head; head = node; }\n"},
+      {"instance, 4 fields", "instance",
+       "class Node {}\n" +
+       "var head = nil;\n" +
+       "for (var i = 0; i < %d; i = i + 1) {\n" +
+       "  var node = Node(); node.a = nil; node.b = nil; node.c = nil; node.next = head; head = node;\n" +
+       "}\n"},
+      {"closure, 1 frame", "closure",
+       "fun make(previous) { fun f() { return previous; } return f; }\n" +
+       "var head = nil;\n" +
+       "for (var i = 0; i < %d; i = i + 1) head = make(head);\n"},
+      {"closure, 2 frames", "closure",
+       "fun make(previous) { { var inner = previous; fun f() { return inner; } return f; } }\n" +
+       "var head = nil;\n" +
+       "for (var i = 0; i < %d; i = i + 1) head = make(head);\n"},
+      {"bound method", "method",
+       "class Node { get() { return this; } }\n" +
+       "fun make(previous) { var node = Node(); node.previous = previous; return node.get; }\n" +
+       "var head = nil;\n" +
+       "for (var i = 0; i < %d; i = i + 1) head = make(head);\n"},
+  };
+
+  public static void main(String[] args) {
+    int n = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+
+    System.out.printf("%-22s %10s %14s%n", "construct", "count", "bytes each");
+    Map<String, Double> perObject = new HashMap<>();
+    for (String[] construct : CONSTRUCTS) {
+      double bytes = runtimeFootprint(String.format(construct[2], n)) / (double)n;
+      perObject.put(construct[0], bytes);
+      System.out.printf(Locale.ROOT, "%-22s %10d %14.1f%n", construct[0], n, bytes);
+    }
+
+    // the second frame is the only difference between the two closures.
+    System.out.printf(Locale.ROOT, "%-22s %10s %14.1f%n", "environment frame", "-",
+                      perObject.get("closure, 2 frames") - perObject.get("closure, 1 frame"));
+
+    // `print 1 + 2;` is 4 nodes: Print, Binary and two Literals.
+    StringBuilder source = new StringBuilder();
+    for (int i = 0; i < n; i++) source.append("print 1 + 2;\n");
+    System.out.printf(Locale.ROOT, "%-22s %10d %14.1f%n", "AST node", 4 * n, astFootprint(source.toString()) / (4.0 * n));
+  }
+
+  // heap retained by running the program, not counting its AST.
+  private static long runtimeFootprint(String source) {
+    List<Token> tokens = new Scanner(source, 1, BenchmarkPrograms.STRICT).scanTokens();
+    List<Stmt> statements = new Parser(tokens, false, BenchmarkPrograms.STRICT).parse();
+    Map<Expr, ResolvedVarInfo> locals = new HashMap<>();
+    new Resolver(locals, BenchmarkPrograms.STRICT).resolve(statements);
+    tokens = null;
+
+    long before = usedAfterGc();
+    Interpreter interpreter = new Interpreter(locals, BenchmarkPrograms.STRICT, BenchmarkPrograms.nullOutput());
+    interpreter.interpret(statements);
+    long after = usedAfterGc();
+
+    Reference.reachabilityFence(interpreter);
+    Reference.reachabilityFence(statements);
+    return after - before;
+  }
+
+  // heap retained by the parsed statements (the tokens they point to included).
+  private static long astFootprint(String source) {
+    long before = usedAfterGc();
+    List<Stmt> statements =
+        new Parser(new Scanner(source, 1, BenchmarkPrograms.STRICT).scanTokens(), false, BenchmarkPrograms.STRICT)
+            .parse();
+    long after = usedAfterGc();
+
+    Reference.reachabilityFence(statements);
+    Reference.reachabilityFence(source);
+    return after - before;
+  }
+
+  // note: a few rounds, since one System.gc() doesn't always collect everything (e.g. with finalizable objects).
+  private static long usedAfterGc() {
+    long used = Long.MAX_VALUE;
+    for (int i = 0; i < 5; i++) {
+      System.gc();
+      long now = MEMORY.getHeapMemoryUsage().getUsed();
+      if (now >= used) break;
+      used = now;
+    }
+    return used;
+  }
+}
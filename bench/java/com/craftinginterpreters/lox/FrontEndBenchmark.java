@@ -0,0 +1,68 @@
+package com.craftinginterpreters.lox;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// each stage of running a program on its own (make jmh): scanning, parsing, resolving and interpreting, for each
+// of the BenchmarkPrograms. every stage's input is prepared once by the stages before it in setup().
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FrontEndBenchmark {
+  @Param({"recursion", "closures", "classes", "strings", "loops"})
+  public String program;
+
+  private String source;
+  private List<Token> tokens;
+  private List<Stmt> statements;
+  private Map<Expr, ResolvedVarInfo> locals;
+
+  @Setup
+  public void setup() {
+    source = BenchmarkPrograms.PROGRAMS.get(program);
+    tokens = new Scanner(source, 1, BenchmarkPrograms.STRICT).scanTokens();
+    statements = new Parser(tokens, false, BenchmarkPrograms.STRICT).parse();
+    locals = new HashMap<>();
+    new Resolver(locals, BenchmarkPrograms.STRICT).resolve(statements);
+  }
+
+  @Benchmark
+  public List<Token> scan() {
+    return new Scanner(source, 1, BenchmarkPrograms.STRICT).scanTokens();
+  }
+
+  @Benchmark
+  public List<Stmt> parse() {
+    return new Parser(tokens, false, BenchmarkPrograms.STRICT).parse();
+  }
+
+  @Benchmark
+  public Map<Expr, ResolvedVarInfo> resolve() {
+    Map<Expr, ResolvedVarInfo> resolved = new HashMap<>();
+    new Resolver(resolved, BenchmarkPrograms.STRICT).resolve(statements);
+    return resolved;
+  }
+
+  @Benchmark
+  public Map<String, Object> interpret() {
+    Interpreter interpreter = new Interpreter(locals, BenchmarkPrograms.STRICT, BenchmarkPrograms.nullOutput());
+    interpreter.interpret(statements);
+    return interpreter.globals;
+  }
+}
@@ -0,0 +1,167 @@
+package com.craftinginterpreters.lox;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// runs the Lox programs in bench/ (make macro_benchmark), each a few times to warm up and then a few times
+// measured, all in one JVM. the results go to a JSON file and are compared against a baseline, another results
+// file: a program whose median got slower than the baseline's by more than the threshold is a regression, and
+// makes the exit code 1.
+//
+// usage: MacroBenchmark [--runs=N] [--warmup=N] [--threshold=PERCENT] [--out=FILE] [--baseline=FILE]
+//                       [--save-baseline] [program...]
+// --save-baseline writes the results as the new baseline instead of comparing against it.
+class MacroBenchmark {
+  private static final Path BENCH_DIR = Paths.get("bench");
+
+  public static void main(String[] args) throws IOException {
+    int runs = 5;
+    int warmup = 3;
+    double threshold = 5;
+    Path out = Paths.get("build", "bench", "results.json");
+    Path baseline = Paths.get("build", "bench", "baseline.json");
+    boolean saveBaseline = false;
+    List<String> programs = new ArrayList<>();
+
+    for (String arg : args) {
+      if (arg.startsWith("--runs=")) {
+        runs = Integer.parseInt(value(arg));
+      } else if (arg.startsWith("--warmup=")) {
+        warmup = Integer.parseInt(value(arg));
+      } else if (arg.startsWith("--threshold=")) {
+        threshold = Double.parseDouble(value(arg));
+      } else if (arg.startsWith("--out=")) {
+        out = Paths.get(value(arg));
+      } else if (arg.startsWith("--baseline=")) {
+        baseline = Paths.get(value(arg));
+      } else if (arg.equals("--save-baseline")) {
+        saveBaseline = true;
+      } else if (arg.startsWith("--")) {
+        System.err.println("Unknown option " + arg);
+        System.exit(64);
+      } else {
+        programs.add(arg);
+      }
+    }
+
+    if (programs.isEmpty()) {
+      String[] files = BENCH_DIR.toFile().list((dir, name) -> name.endsWith(".lox"));
+      Arrays.sort(files);
+      for (String file : files) programs.add(file.substring(0, file.length() - 4));
+    }
+
+    LoxEngine engine = new LoxEngine();
+    Map<String, double[]> results = new LinkedHashMap<>();
+    for (String program : programs) {
+      String source = Files.readString(BENCH_DIR.resolve(program + ".lox"));
+      Script script = engine.compile(source);
+      if (script.hasErrors()) throw new IllegalStateException(program + ": " + script.diagnostics());
+
+      for (int i = 0; i < warmup; i++) run(engine, program, script);
+      double[] millis = new double[runs];
+      for (int i = 0; i < runs; i++) millis[i] = run(engine, program, script);
+      results.put(program, millis);
+    }
+
+    Path target = saveBaseline ? baseline : out;
+    Files.createDirectories(target.toAbsolutePath().getParent());
+    Files.writeString(target, json(results, runs, warmup));
+
+    Map<String, Double> previous = null;
+    if (!saveBaseline && Files.isRegularFile(baseline)) previous = readMedians(baseline);
+
+    System.out.printf("%-16s %10s %10s %10s %10s%n", "program", "median ms", "min ms", "baseline", "change");
+    int regressions = 0;
+    for (Map.Entry<String, double[]> result : results.entrySet()) {
+      double median = median(result.getValue());
+      Double base = previous == null ? null : previous.get(result.getKey());
+      String change = "";
+      if (base != null) {
+        double percent = (median - base) / base * 100;
+        change = String.format(Locale.ROOT, "%+.1f%%", percent);
+        if (percent > threshold) {
+          change += " REGRESSION";
+          regressions++;
+        }
+      }
+      System.out.printf(Locale.ROOT, "%-16s %10.1f %10.1f %10s %s%n", result.getKey(), median,
+                        Arrays.stream(result.getValue()).min().getAsDouble(),
+                        base == null ? "-" : String.format(Locale.ROOT, "%.1f", base), change);
+    }
+
+    System.out.println("Wrote " + target + ".");
+    if (saveBaseline) return;
+    if (previous == null) {
+      System.out.println("No baseline at " + baseline + ", run with --save-baseline to make one.");
+    } else if (regressions > 0) {
+      System.out.printf(Locale.ROOT, "%d regression(s) beyond %.1f%%.%n", regressions, threshold);
+      System.exit(1);
+    }
+  }
+
+  // one run in milliseconds. the programs' own clock() timings are printed to a discarded writer.
+  private static double run(LoxEngine engine, String program, Script script) {
+    StringWriter output = new StringWriter();
+    long start = System.nanoTime();
+    List<Diagnostic> diagnostics = engine.run(script, null, output);
+    long nanos = System.nanoTime() - start;
+    if (!diagnostics.isEmpty()) throw new IllegalStateException(program + ": " + diagnostics);
+    return nanos / 1e6;
+  }
+
+  private static String value(String arg) {
+    return arg.substring(arg.indexOf('=') + 1);
+  }
+
+  private static double median(double[] values) {
+    double[] sorted = values.clone();
+    Arrays.sort(sorted);
+    int middle = sorted.length / 2;
+    return sorted.length % 2 == 1 ? sorted[middle] : (sorted[middle - 1] + sorted[middle]) / 2;
+  }
+
+  private static String json(Map<String, double[]> results, int runs, int warmup) {
+    StringBuilder json = new StringBuilder();
+    json.append("{\n");
+    json.append("  \"java\": \"").append(System.getProperty("java.version")).append("\",\n");
+    json.append("  \"runs\": ").append(runs).append(",\n");
+    json.append("  \"warmup\": ").append(warmup).append(",\n");
+    json.append("  \"results\": {\n");
+    int i = 0;
+    for (Map.Entry<String, double[]> result : results.entrySet()) {
+      double[] millis = result.getValue();
+      json.append(String.format(Locale.ROOT, "    \"%s\": {\"median_ms\": %.3f, \"min_ms\": %.3f, \"runs_ms\": [",
+                                result.getKey(), median(millis), Arrays.stream(millis).min().getAsDouble()));
+      for (int run = 0; run < millis.length; run++) {
+        json.append(String.format(Locale.ROOT, run == 0 ? "%.3f" : ", %.3f", millis[run]));
+      }
+      json.append(++i < results.size() ? "]},\n" : "]}\n");
+    }
+    json.append("  }\n");
+    json.append("}\n");
+    return json.toString();
+  }
+
+  // note: only reads back what json() writes, it isn't a JSON parser.
+  private static Map<String, Double> readMedians(Path path) throws IOException {
+    Map<String, Double> medians = new LinkedHashMap<>();
+    Matcher matcher = Pattern.compile("\"(\\w+)\": \\{\"median_ms\": ([0-9.]+)")
+                             .matcher(new String(Files.readAllBytes(path), StandardCharsets.UTF_8));
+    while (matcher.find()) {
+      medians.put(matcher.group(1), Double.parseDouble(matcher.group(2)));
+    }
+    return medians;
+  }
+}
@@ -0,0 +1,108 @@
+package com.craftinginterpreters.lox;
+
+import java.io.Writer;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// how well running one compiled Script scales with threads (make scaling_benchmark). every thread runs the same
+// Script in a loop, each run in its own Interpreter, for a fixed time per step. throughput should grow linearly
+// with the thread count up to the number of cores, since the only state the runs share is the read-only AST and
+// resolutions.
+//
+// usage: ScalingBenchmark [--virtual] [max threads] [seconds per step]
+// --virtual runs each thread's loop on a virtual thread instead (JDK 21+).
+class ScalingBenchmark {
+  private static final String PROGRAM =
+      "fun fib(n) { if (n < 2) return n; return fib(n - 1) + fib(n - 2); }\n" +
+      "fun counter() { var i = 0; fun count() { i = i + 1; return i; } return count; }\n" +
+      "class Point {\n" +
+      "  init(x, y) { this.x = x; this.y = y; }\n" +
+      "  add(other) { return Point(this.x + other.x, this.y + other.y); }\n" +
+      "}\n" +
+      "var c = counter();\n" +
+      "var p = Point(0, 0);\n" +
+      "for (var i = 0; i < 2000; i = i + 1) { c(); p = p.add(Point(1, 2)); }\n" +
+      "var s = \"\";\n" +
+      "for (var i = 0; i < 100; i = i + 1) s = s + \"x\";\n" +
+      "var result = fib(15) + c() + p.x + p.y;\n";
+
+  private static final Writer NULL = Writer.nullWriter();
+
+  public static void main(String[] args) throws Exception {
+    boolean virtual = args.length > 0 && args[0].equals("--virtual");
+    int first = virtual ? 1 : 0;
+    int maxThreads = args.length > first ? Integer.parseInt(args[first]) : Runtime.getRuntime().availableProcessors();
+    double seconds = args.length > first + 1 ? Double.parseDouble(args[first + 1]) : 2;
+
+    LoxEngine engine = new LoxEngine();
+    Script script = engine.compile(PROGRAM);
+    if (script.hasErrors()) throw new IllegalStateException(script.diagnostics().toString());
+
+    System.out.printf("%d cores, %s threads, %.1f s per step%n", Runtime.getRuntime().availableProcessors(),
+                      virtual ? "virtual" : "platform", seconds);
+    measure(engine, script, 1, seconds, virtual); // warmup
+    measure(engine, script, maxThreads, seconds, virtual);
+
+    double single = 0;
+    System.out.println("threads    runs/s   speedup  efficiency");
+    List<Integer> steps = new ArrayList<>();
+    for (int threads = 1; threads < maxThreads; threads *= 2) steps.add(threads);
+    steps.add(maxThreads);
+
+    for (int threads : steps) {
+      double throughput = measure(engine, script, threads, seconds, virtual);
+      if (threads == 1) single = throughput;
+      double speedup = throughput / single;
+      System.out.printf("%7d %9.0f %8.2fx %10.0f%%%n", threads, throughput, speedup, 100 * speedup / threads);
+    }
+  }
+
+  // runs/s over all threads.
+  private static double measure(LoxEngine engine, Script script, int threads, double seconds, boolean virtual)
+      throws Exception {
+    ExecutorService executor = virtual ? virtualThreadExecutor() : Executors.newFixedThreadPool(threads);
+    CountDownLatch start = new CountDownLatch(1);
+    List<Future<Long>> results = new ArrayList<>();
+
+    for (int i = 0; i < threads; i++) {
+      Callable<Long> loop = () -> {
+        start.await();
+        long deadline = System.nanoTime() + (long)(seconds * 1e9);
+        long runs = 0;
+        while (System.nanoTime() < deadline) {
+          List<Diagnostic> diagnostics = engine.run(script, null, NULL);
+          if (!diagnostics.isEmpty()) throw new IllegalStateException(diagnostics.toString());
+          runs++;
+        }
+        return runs;
+      };
+      results.add(executor.submit(loop));
+    }
+
+    long begin = System.nanoTime();
+    start.countDown();
+    long runs = 0;
+    for (Future<Long> result : results) {
+      runs += result.get();
+    }
+    double elapsed = (System.nanoTime() - begin) / 1e9;
+    executor.shutdown();
+    return runs / elapsed;
+  }
+
+  // Executors.newVirtualThreadPerTaskExecutor(), looked up reflectively so this still compiles on JDK 17.
+  private static ExecutorService virtualThreadExecutor() throws Exception {
+    try {
+      Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+      return (ExecutorService)factory.invoke(null);
+    } catch (NoSuchMethodException e) {
+      throw new UnsupportedOperationException("--virtual needs JDK 21 or later");
+    }
+  }
+}
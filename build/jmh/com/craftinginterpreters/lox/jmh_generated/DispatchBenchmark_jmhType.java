@@ -0,0 +1,4 @@
+package com.craftinginterpreters.lox.jmh_generated;
+public class DispatchBenchmark_jmhType extends DispatchBenchmark_jmhType_B3 {
+}
+
@@ -0,0 +1,4 @@
+package com.craftinginterpreters.lox.jmh_generated;
+public class FrontEndBenchmark_jmhType extends FrontEndBenchmark_jmhType_B3 {
+}
+
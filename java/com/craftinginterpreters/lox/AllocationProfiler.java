@@ -0,0 +1,228 @@
+package com.craftinginterpreters.lox;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+// counts the runtime objects a script allocates (jlox --allocations[=N] script), by kind, source line and the
+// function running at the time, and report() prints the top N sites and a per-function summary. the counts come
+// from hooks at the interpreter's allocation sites, one null check each when off, so they're exact. sizes aren't
+// counted, see make footprint_benchmark for what each kind costs.
+//
+// not counted: what natives allocate, the HashMap entries behind instance fields, and the Boolean results of
+// comparisons (Boolean.valueOf, so never allocated).
+class AllocationProfiler {
+  enum Kind {
+    NUMBER("number"),             // boxed Double from arithmetic.
+    STRING("string"),             // concatenation.
+    ENVIRONMENT("environment"),   // a block's scope or a call's frame.
+    ARGUMENTS("argument list"),   // every call's List<Object>.
+    CLOSURE("closure"),           // a function (or lambda) declaration evaluated.
+    BOUND_METHOD("bound method"), // a method looked up on an instance: a LoxFunction and its `this` scope.
+    INSTANCE("instance"),         // a class called, its field map included.
+    CLASS("class");
+
+    final String label;
+
+    Kind(String label) {
+      this.label = label;
+    }
+  }
+
+  private static final class Site {
+    final Kind kind;
+    final int line;
+    final Object function; // CallProfiler.key, or null for top-level code.
+
+    Site(Kind kind, int line, Object function) {
+      this.kind = kind;
+      this.line = line;
+      this.function = function;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      if (!(other instanceof Site)) return false;
+      Site site = (Site)other;
+      return kind == site.kind && line == site.line && function == site.function;
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(kind, line, System.identityHashCode(function));
+    }
+  }
+
+  private final int top;
+  private final Map<Site, long[]> sites = new HashMap<>();
+  private final Map<Object, LoxCallable> callables = new HashMap<>();
+  private final Map<Stmt.Block, Integer> blockLines = new IdentityHashMap<>();
+
+  // the function running now, see call().
+  private Object function = null;
+
+  AllocationProfiler(int top) {
+    this.top = top;
+  }
+
+  // a call's argument list, and whatever the callee allocates on its way in. allocations made while it runs
+  // are counted under it.
+  Object call(Interpreter interpreter, Token paren, LoxCallable callee, List<Object> arguments) {
+    record(Kind.ARGUMENTS, paren.line);
+    if (callee instanceof LoxFunction) {
+      record(Kind.ENVIRONMENT, paren.line);
+    } else if (callee instanceof LoxClass) {
+      record(Kind.INSTANCE, paren.line);
+      if (((LoxClass)callee).findMethod("init") != null) {
+        record(Kind.BOUND_METHOD, paren.line);
+        record(Kind.ENVIRONMENT, paren.line);
+      }
+    }
+
+    Object key = CallProfiler.key(callee);
+    callables.putIfAbsent(key, callee);
+    Object caller = function;
+    function = key;
+    try {
+      return callee.call(interpreter, arguments);
+    } finally {
+      function = caller;
+    }
+  }
+
+  // a negation, called once its operand passed the type check.
+  void unary(Token operator) {
+    record(Kind.NUMBER, operator.line);
+  }
+
+  // called before the operator runs, so it only counts what succeeds as far as the operand types go.
+  void binary(Token operator, Object left, Object right) {
+    switch (operator.type) {
+      case PLUS:
+        if (left instanceof String || right instanceof String) {
+          record(Kind.STRING, operator.line);
+        } else if (left instanceof Double && right instanceof Double) {
+          record(Kind.NUMBER, operator.line);
+        }
+        break;
+      case MINUS:
+      case SLASH:
+      case STAR:
+        if (left instanceof Double && right instanceof Double) record(Kind.NUMBER, operator.line);
+        break;
+      default:
+        break;
+    }
+  }
+
+  void get(Token name, LoxInstance instance, Overlay overlay) {
+    if (instance.binds(name, overlay)) record(Kind.BOUND_METHOD, name.line);
+  }
+
+  void block(Stmt.Block block) {
+    Integer line = blockLines.get(block);
+    if (line == null) {
+      line = line(block);
+      blockLines.put(block, line);
+    }
+    record(Kind.ENVIRONMENT, line);
+  }
+
+  void record(Kind kind, int line) {
+    sites.computeIfAbsent(new Site(kind, line, function), site -> new long[1])[0]++;
+  }
+
+  void report(Interpreter interpreter, PrintStream out) {
+    List<Map.Entry<Site, long[]>> sorted = new ArrayList<>(sites.entrySet());
+    sorted.sort((a, b) -> Long.compare(b.getValue()[0], a.getValue()[0]));
+
+    Map<Object, Map<Kind, Long>> byFunction = new HashMap<>();
+    long total = 0;
+    for (Map.Entry<Site, long[]> site : sorted) {
+      byFunction.computeIfAbsent(site.getKey().function, f -> new EnumMap<>(Kind.class))
+                .merge(site.getKey().kind, site.getValue()[0], Long::sum);
+      total += site.getValue()[0];
+    }
+
+    out.println("allocation sites (top " + Math.min(top, sorted.size()) + " of " + sorted.size() + ", " + total +
+                " allocations):");
+    out.println(String.format("%12s %6s  %-14s %6s  %s", "count", "%", "kind", "line", "function"));
+    for (Map.Entry<Site, long[]> entry : sorted.subList(0, Math.min(top, sorted.size()))) {
+      Site site = entry.getKey();
+      out.println(String.format("%12d %5.1f%%  %-14s %6s  %s", entry.getValue()[0],
+                                100.0 * entry.getValue()[0] / total, site.kind.label,
+                                site.line < 0 ? "?" : Integer.toString(site.line), label(interpreter, site.function)));
+    }
+
+    List<Map.Entry<Object, Map<Kind, Long>>> functions = new ArrayList<>(byFunction.entrySet());
+    functions.sort((a, b) -> Long.compare(sum(b.getValue()), sum(a.getValue())));
+    out.println();
+    out.println("allocations by function:");
+    out.println(String.format("%12s %6s  %s", "count", "%", "function: kinds"));
+    for (Map.Entry<Object, Map<Kind, Long>> function : functions) {
+      List<String> kinds = new ArrayList<>();
+      for (Map.Entry<Kind, Long> kind : function.getValue().entrySet()) {
+        kinds.add(kind.getKey().label + " " + kind.getValue());
+      }
+      long count = sum(function.getValue());
+      out.println(String.format("%12d %5.1f%%  %s: %s", count, 100.0 * count / total,
+                                label(interpreter, function.getKey()), String.join(", ", kinds)));
+    }
+  }
+
+  private String label(Interpreter interpreter, Object function) {
+    return function == null ? "<script>" : CallProfiler.label(interpreter, callables.get(function));
+  }
+
+  private static long sum(Map<Kind, Long> counts) {
+    long sum = 0;
+    for (long count : counts.values()) sum += count;
+    return sum;
+  }
+
+  // the line a block starts on, as far as its first token says. -1 for an empty block.
+  private static int line(Stmt stmt) {
+    if (stmt instanceof Stmt.Block block) {
+      for (Stmt statement : block.statements) {
+        int line = line(statement);
+        if (line >= 0) return line;
+      }
+      return -1;
+    }
+    if (stmt instanceof Stmt.Expression expression) return line(expression.expression);
+    if (stmt instanceof Stmt.Print print) return line(print.expression);
+    if (stmt instanceof Stmt.Var var) return var.name.line;
+    if (stmt instanceof Stmt.Return returnStmt) return returnStmt.keyword.line;
+    if (stmt instanceof Stmt.If ifStmt) return line(ifStmt.condition);
+    if (stmt instanceof Stmt.While whileStmt) return line(whileStmt.condition);
+    if (stmt instanceof Stmt.Function function) return function.name.line;
+    if (stmt instanceof Stmt.Class classStmt) return classStmt.name.line;
+    return -1;
+  }
+
+  // note: the line of some token in the expression. the leftmost operand's, where there is one.
+  private static int line(Expr expr) {
+    if (expr instanceof Expr.Assign assign) return assign.name.line;
+    if (expr instanceof Expr.Binary binary) return first(line(binary.left), binary.operator.line);
+    if (expr instanceof Expr.Call call) return first(line(call.callee), call.paren.line);
+    if (expr instanceof Expr.Conditional conditional) return line(conditional.conditional);
+    if (expr instanceof Expr.Function function) return function.start.line;
+    if (expr instanceof Expr.Get get) return first(line(get.object), get.name.line);
+    if (expr instanceof Expr.Grouping grouping) return line(grouping.expression);
+    if (expr instanceof Expr.Logical logical) return first(line(logical.left), logical.operator.line);
+    if (expr instanceof Expr.Set set) return first(line(set.object), set.name.line);
+    if (expr instanceof Expr.This thisExpr) return thisExpr.keyword.line;
+    if (expr instanceof Expr.Unary unary) return unary.operator.line;
+    if (expr instanceof Expr.Variable variable) return variable.name.line;
+    return -1;
+  }
+
+  private static int first(int line, int fallback) {
+    return line >= 0 ? line : fallback;
+  }
+}
@@ -0,0 +1,98 @@
+package com.craftinginterpreters.lox;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// natives for timing Lox code from Lox, defined next to clock():
+//   nanoclock()           nanoseconds since the interpreter's class was loaded. clock() only has milliseconds.
+//   bench(fn, iterations) calls fn (no arguments) `iterations` times untimed to warm up, then `iterations` times
+//                         timed, and returns a BenchResult instance with the fields iterations, mean, min, p50, p90,
+//                         p99 and max (nanoseconds per call), and allocated (bytes per call, nil if the JVM can't
+//                         count them).
+class BenchNatives {
+  // note: relative, so the clock stays well inside the doubles that hold whole numbers exactly.
+  private static final long ORIGIN = System.nanoTime();
+
+  static void define(Map<String, Object> globals) {
+    globals.put("nanoclock", new LoxCallable() {
+      @Override
+      public int arity() { return 0; }
+
+      @Override
+      public Object call(Interpreter interpreter, List<Object> arguments) {
+        return (double)(System.nanoTime() - ORIGIN);
+      }
+
+      @Override
+      public String toString() { return "<native fn>"; }
+    });
+
+    globals.put("bench", new LoxCallable() {
+      @Override
+      public int arity() { return 2; }
+
+      @Override
+      public Object call(Interpreter interpreter, List<Object> arguments) {
+        return bench(interpreter, arguments.get(0), arguments.get(1));
+      }
+
+      @Override
+      public String toString() { return "<native fn>"; }
+    });
+  }
+
+  private static Object bench(Interpreter interpreter, Object callee, Object count) {
+    if (!(callee instanceof LoxCallable) || ((LoxCallable)callee).arity() != 0) {
+      throw new NativeError("Can only bench functions that take no arguments.");
+    }
+    if (!(count instanceof Double) || (double)count < 1 || (double)count != Math.floor((double)count) ||
+        (double)count > Integer.MAX_VALUE) {
+      throw new NativeError("Iterations must be a positive whole number.");
+    }
+    LoxCallable function = (LoxCallable)callee;
+    int iterations = (int)(double)count;
+    List<Object> noArguments = List.of();
+
+    for (int i = 0; i < iterations; i++) {
+      function.call(interpreter, noArguments);
+    }
+
+    long[] samples = new long[iterations];
+    long allocatedBefore = RunStats.allocatedBytes();
+    for (int i = 0; i < iterations; i++) {
+      long started = System.nanoTime();
+      function.call(interpreter, noArguments);
+      samples[i] = System.nanoTime() - started;
+    }
+    long allocatedAfter = RunStats.allocatedBytes();
+
+    Arrays.sort(samples);
+    long total = 0;
+    for (long sample : samples) total += sample;
+
+    LoxInstance result = new LoxInstance(new LoxClass("BenchResult", new HashMap<>()));
+    if (interpreter.metrics != null) interpreter.metrics.instances.increment();
+    set(result, "iterations", (double)iterations);
+    set(result, "mean", (double)total / iterations);
+    set(result, "min", (double)samples[0]);
+    set(result, "p50", (double)percentile(samples, 0.5));
+    set(result, "p90", (double)percentile(samples, 0.9));
+    set(result, "p99", (double)percentile(samples, 0.99));
+    set(result, "max", (double)samples[iterations - 1]);
+    set(result, "allocated", allocatedBefore < 0 || allocatedAfter < 0
+        ? null : (double)(allocatedAfter - allocatedBefore) / iterations);
+    return result;
+  }
+
+  // nearest rank.
+  private static long percentile(long[] sorted, double fraction) {
+    int rank = (int)Math.ceil(fraction * sorted.length);
+    return sorted[Math.max(rank, 1) - 1];
+  }
+
+  private static void set(LoxInstance instance, String name, Object value) {
+    instance.set(new Token(TokenType.IDENTIFIER, name, null, 0), value, null);
+  }
+}
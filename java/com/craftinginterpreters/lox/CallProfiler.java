@@ -0,0 +1,109 @@
+package com.craftinginterpreters.lox;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// times every call the interpreter makes (jlox --profile script): functions, methods, classes and natives. each
+// is counted and timed at its call site (Interpreter.visitCallExpr), which is a single null check when no
+// profiler is set. report() prints, per function, the number of calls, the self time (spent in its own code),
+// and the total time (including the calls it made).
+//
+// functions are told apart by declaration, so all the closures and bound methods made from one declaration add
+// up. they're named by their name, or <lambda>, and the line they're declared on. a class's time includes its
+// initializer's, which isn't counted on its own since the class calls it directly.
+class CallProfiler {
+  private static final class Entry {
+    final String label;
+    long calls = 0;
+    long selfNanos = 0;
+    long totalNanos = 0;
+
+    // calls of this entry that haven't returned yet. only the outermost of recursive calls adds to the total.
+    int active = 0;
+
+    Entry(String label) {
+      this.label = label;
+    }
+  }
+
+  private final Map<Object, Entry> entries = new HashMap<>();
+  private final long started = System.nanoTime();
+
+  // time spent in calls made from the running call, or from top-level code when nothing is running.
+  private long childNanos = 0;
+
+  Object call(Interpreter interpreter, LoxCallable function, List<Object> arguments) {
+    Entry entry = entry(interpreter, function);
+    entry.calls++;
+    entry.active++;
+
+    long outerChildNanos = childNanos;
+    childNanos = 0;
+    long callStarted = System.nanoTime();
+    try {
+      return function.call(interpreter, arguments);
+    } finally {
+      long elapsed = System.nanoTime() - callStarted;
+      entry.selfNanos += elapsed - childNanos;
+      if (--entry.active == 0) entry.totalNanos += elapsed;
+      childNanos = outerChildNanos + elapsed;
+    }
+  }
+
+  // sorted by self time, slowest first. <script> is the top-level code.
+  void report(PrintStream out) {
+    long wallNanos = System.nanoTime() - started;
+    List<Entry> sorted = new ArrayList<>(entries.values());
+    Entry script = new Entry("<script>");
+    script.calls = 1;
+    script.selfNanos = wallNanos - childNanos;
+    script.totalNanos = wallNanos;
+    sorted.add(script);
+    sorted.sort((a, b) -> Long.compare(b.selfNanos, a.selfNanos));
+
+    out.println(String.format("%10s %12s %7s %12s %7s  %s", "calls", "self ms", "self%", "total ms", "total%",
+                              "function"));
+    for (Entry entry : sorted) {
+      out.println(String.format("%10d %12.3f %6.1f%% %12.3f %6.1f%%  %s", entry.calls, entry.selfNanos / 1e6,
+                                percent(entry.selfNanos, wallNanos), entry.totalNanos / 1e6,
+                                percent(entry.totalNanos, wallNanos), entry.label));
+    }
+  }
+
+  private Entry entry(Interpreter interpreter, LoxCallable function) {
+    Object key = key(function);
+    Entry entry = entries.get(key);
+    if (entry == null) {
+      entry = new Entry(label(interpreter, function));
+      entries.put(key, entry);
+    }
+    return entry;
+  }
+
+  // what calls are counted under. see SamplingProfiler too.
+  static Object key(LoxCallable function) {
+    return function instanceof LoxFunction ? ((LoxFunction)function).declaration() : function;
+  }
+
+  static String label(Interpreter interpreter, LoxCallable function) {
+    if (function instanceof LoxFunction) {
+      LoxFunction loxFunction = (LoxFunction)function;
+      String name = loxFunction.name() == null ? "<lambda>" : loxFunction.name();
+      return name + " (line " + loxFunction.declaration().start.line + ")";
+    }
+    if (function instanceof LoxClass) return "class " + ((LoxClass)function).name;
+
+    // natives only know their global's name.
+    for (Map.Entry<String, Object> global : interpreter.globals.entrySet()) {
+      if (global.getValue() == function) return global.getKey() + " (native)";
+    }
+    return function.toString();
+  }
+
+  private static double percent(long part, long whole) {
+    return whole == 0 ? 0 : 100.0 * part / whole;
+  }
+}
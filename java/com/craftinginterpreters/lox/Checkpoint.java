@@ -0,0 +1,119 @@
+package com.craftinginterpreters.lox;
+
+import java.io.PrintWriter;
+import java.util.AbstractMap;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// the state of an interpreter after it ran some program (a prelude defining classes, functions, tables...), that
+// any number of interpreters can be forked from to run more code on top of it, concurrently too. see
+// LoxEngine.checkpoint.
+//
+// taking a checkpoint freezes every environment and instance reachable from the globals. frozen objects are
+// never written again: an interpreter that assigns to one writes to its own copy in its Overlay, so a fork costs
+// O(1) and only the state a fork actually changes gets copied. globals and resolutions are layered the same way,
+// the fork's own on top of the checkpoint's. a fork can be checkpointed in turn: the new checkpoint takes the
+// fork's overlay with it, frozen, as the base of its own forks' overlays.
+public final class Checkpoint {
+  final Map<String, Object> globals;
+  final Map<Expr, ResolvedVarInfo> locals;
+  // the copies the interpreter this was taken from had made, or null if it didn't start from a checkpoint.
+  private final Overlay overlay;
+  private final List<Diagnostic> diagnostics;
+
+  // note: the caller stops writing to globals, locals and overlay from here on (see Interpreter.checkpoint).
+  Checkpoint(Map<String, Object> globals, Map<Expr, ResolvedVarInfo> locals, Overlay overlay,
+             List<Diagnostic> diagnostics) {
+    this.globals = Collections.unmodifiableMap(globals);
+    this.locals = locals;
+    this.overlay = overlay;
+    this.diagnostics = List.copyOf(diagnostics);
+
+    Deque<Object> pending = new ArrayDeque<>();
+    for (Object value : globals.values()) {
+      if (value != null) pending.push(value);
+    }
+    freeze(pending, overlay);
+  }
+
+  // compile errors in the prelude, or the runtime error that stopped it. nothing can be forked from a checkpoint
+  // with any of these.
+  public List<Diagnostic> diagnostics() {
+    return diagnostics;
+  }
+
+  public boolean hasErrors() {
+    return !diagnostics.isEmpty();
+  }
+
+  // a new interpreter starting from this checkpoint, for a program resolved into `locals`.
+  Interpreter fork(Map<Expr, ResolvedVarInfo> locals, ErrorReporter reporter, PrintWriter out) {
+    return new Interpreter(new Layered<>(this.locals, locals), new Layered<>(globals, new HashMap<>()),
+                           new Overlay(overlay), reporter, out);
+  }
+
+  // note: an explicit worklist rather than recursion, a long linked list of instances would overflow the stack.
+  // already frozen objects are walked too, they can hold copies in `overlay` that reach new ones.
+  private static void freeze(Deque<Object> pending, Overlay overlay) {
+    Set<Object> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+    while (!pending.isEmpty()) {
+      Object value = pending.pop();
+      if (!seen.add(value)) continue;
+
+      if (value instanceof Environment) {
+        ((Environment)value).freeze(pending, overlay);
+      } else if (value instanceof LoxInstance) {
+        ((LoxInstance)value).freeze(pending, overlay);
+      } else if (value instanceof LoxFunction) {
+        ((LoxFunction)value).freeze(pending);
+      } else if (value instanceof LoxClass) {
+        ((LoxClass)value).freeze(pending);
+      }
+    }
+  }
+
+  // a map on top of a shared, read-only one: lookups try `top` first, writes only ever go to `top`. Lox never
+  // removes a global or a resolution, so there's nothing to hide in the bottom map.
+  static final class Layered<K, V> extends AbstractMap<K, V> {
+    private final Map<K, V> bottom;
+    private final Map<K, V> top;
+
+    Layered(Map<K, V> bottom, Map<K, V> top) {
+      this.bottom = bottom;
+      this.top = top;
+    }
+
+    @Override
+    public V get(Object key) {
+      V value = top.get(key);
+      if (value != null || top.containsKey(key)) return value;
+      return bottom.get(key);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+      return top.containsKey(key) || bottom.containsKey(key);
+    }
+
+    @Override
+    public V put(K key, V value) {
+      V previous = get(key);
+      top.put(key, value);
+      return previous;
+    }
+
+    // note: a merged copy, so it's O(size). only the engine's write-back and the like use this.
+    @Override
+    public Set<Entry<K, V>> entrySet() {
+      Map<K, V> merged = new HashMap<>(bottom);
+      merged.putAll(top);
+      return Collections.unmodifiableMap(merged).entrySet();
+    }
+  }
+}
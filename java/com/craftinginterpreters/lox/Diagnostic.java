@@ -0,0 +1,17 @@
+package com.craftinginterpreters.lox;
+
+// an error found while compiling or running a Script, as reported by LoxEngine. `where` points at the offending
+// token (e.g. " at 'foo'") and is empty for runtime errors and errors without a token.
+public record Diagnostic(Kind kind, int line, String where, String message) {
+  public enum Kind {
+    COMPILE,
+    RUNTIME
+  }
+
+  // same format as jlox prints on the command line.
+  @Override
+  public String toString() {
+    if (kind == Kind.RUNTIME) return message + "\n[line " + line + "]";
+    return "[line " + line + "] Error" + where + ": " + message;
+  }
+}
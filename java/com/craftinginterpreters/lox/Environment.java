@@ -1,16 +1,21 @@
 package com.craftinginterpreters.lox;
 
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.List;
 
 class Environment {
   final Environment enclosing;
   private final List<Object> values = new ArrayList<>();
 
-  static Object uninitialized = new Object();
+  static final Object uninitialized = new Object();
+
+  // set when a Checkpoint takes this environment in. from then on it's shared by every interpreter forked from the
+  // checkpoint and never written again, each interpreter writes to its own copy in its Overlay instead.
+  boolean frozen = false;
 
   Environment() {
-    enclosing = null;
+    this(null);
   }
 
   Environment(Environment enclosing) {
@@ -42,4 +47,37 @@ class Environment {
   void assignAt(int distance, int idx, Object value) {
     ancestor(distance).values.set(idx, value);
   }
+
+  // getAt and assignAt for an interpreter that may reach frozen environments.
+  Object getAt(int distance, int idx, Overlay overlay) {
+    Environment environment = ancestor(distance);
+    if (!environment.frozen) return environment.values.get(idx); // note: kept small for inlining.
+    return environment.values(overlay, false).get(idx);
+  }
+
+  void assignAt(int distance, int idx, Object value, Overlay overlay) {
+    ancestor(distance).values(overlay, true).set(idx, value);
+  }
+
+  // the values as the overlay's interpreter sees them. a frozen environment is copied on its first write.
+  private List<Object> values(Overlay overlay, boolean write) {
+    if (!frozen) return values;
+
+    List<Object> copy = overlay.copy(this);
+    if (write && !overlay.owns(this, copy)) {
+      copy = new ArrayList<>(copy != null ? copy : values);
+      overlay.put(this, copy);
+    }
+    return copy != null ? copy : values;
+  }
+
+  // `overlay` is the one the checkpoint is taken through, null for an interpreter that didn't start from one.
+  void freeze(Deque<Object> pending, Overlay overlay) {
+    List<Object> values = frozen ? values(overlay, false) : this.values;
+    frozen = true;
+    if (enclosing != null) pending.push(enclosing);
+    for (Object value : values) {
+      if (value != null) pending.push(value);
+    }
+  }
 }
@@ -0,0 +1,24 @@
+package com.craftinginterpreters.lox;
+
+// where the Scanner, Parser, Resolver and Interpreter send their errors. the command line prints them to stderr
+// and remembers that something failed (see Lox.reporter), an embedding collects them as Diagnostics (see
+// LoxEngine). nothing about error reporting is static anymore, so independent compilations and runs don't share
+// any state.
+interface ErrorReporter {
+  // a scan, parse or resolution error. `where` is e.g. " at 'foo'", or empty.
+  void report(int line, String where, String message);
+
+  void runtimeError(RuntimeError error);
+
+  default void error(int line, String message) {
+    report(line, "", message);
+  }
+
+  default void error(Token token, String message) {
+    if (token.type == TokenType.EOF) {
+      report(token.line, " at end", message);
+    } else {
+      report(token.line, " at '" + token.lexeme + "'", message);
+    }
+  }
+}
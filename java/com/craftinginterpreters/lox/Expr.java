@@ -81,9 +81,11 @@ abstract class Expr {
     final Expr elseBranch;
   }
   static class Function extends Expr {
-    Function(List<Token> params, List<Stmt> body) {
+    Function(Token start, List<Token> params, List<Stmt> body, LazyFunctionBody lazyBody) {
+      this.start = start;
       this.params = params;
       this.body = body;
+      this.lazyBody = lazyBody;
     }
 
     @Override
@@ -91,8 +93,10 @@ abstract class Expr {
       return visitor.visitFunctionExpr(this);
     }
 
+    final Token start;
     final List<Token> params;
     final List<Stmt> body;
+    final LazyFunctionBody lazyBody;
   }
   static class Get extends Expr {
     Get(Expr object, Token name) {
@@ -0,0 +1,656 @@
+package com.craftinginterpreters.lox;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// compact encoding of a resolved program, generated by GenerateAst from the same node definitions as
+// Expr and Stmt. a node is a run of ints in `nodes`: its Kind, then one int per field. child nodes are
+// offsets into `nodes` (-1 for null), lists are offsets into `lists` (a count followed by the elements),
+// names and literal values are indices into `constants`, and operator tokens become an Opcode. variable
+// accesses carry their resolved distance and slot inline (distance -1 for globals). source lines live in
+// a side table, since they're only needed to report errors. see FlatInterpreter.
+final class FlatAst {
+  enum Kind {
+    ASSIGN_EXPR,
+    BINARY_EXPR,
+    CALL_EXPR,
+    CONDITIONAL_EXPR,
+    FUNCTION_EXPR,
+    GET_EXPR,
+    GROUPING_EXPR,
+    LITERAL_EXPR,
+    LOGICAL_EXPR,
+    SET_EXPR,
+    THIS_EXPR,
+    UNARY_EXPR,
+    VARIABLE_EXPR,
+    BLOCK_STMT,
+    BREAK_STMT,
+    CLASS_STMT,
+    EXPRESSION_STMT,
+    FUNCTION_STMT,
+    IF_STMT,
+    PRINT_STMT,
+    RETURN_STMT,
+    VAR_STMT,
+    WHILE_STMT,
+  }
+
+  enum Opcode {
+    COMMA(","),
+    MINUS("-"),
+    PLUS("+"),
+    SLASH("/"),
+    STAR("*"),
+    BANG("!"),
+    BANG_EQUAL("!="),
+    EQUAL_EQUAL("=="),
+    GREATER(">"),
+    GREATER_EQUAL(">="),
+    LESS("<"),
+    LESS_EQUAL("<="),
+    AND("and"),
+    OR("or");
+
+    final String lexeme;
+
+    Opcode(String lexeme) {
+      this.lexeme = lexeme;
+    }
+  }
+
+  static final Kind[] KINDS = Kind.values();
+  static final Opcode[] OPCODES = Opcode.values();
+
+  // field offsets, relative to the start of a node. offset 0 holds the node's Kind.
+  static final int ASSIGN_EXPR_NAME = 1;
+  static final int ASSIGN_EXPR_VALUE = 2;
+  static final int ASSIGN_EXPR_DISTANCE = 3;
+  static final int ASSIGN_EXPR_SLOT = 4;
+  static final int BINARY_EXPR_LEFT = 1;
+  static final int BINARY_EXPR_OPERATOR = 2;
+  static final int BINARY_EXPR_RIGHT = 3;
+  static final int CALL_EXPR_CALLEE = 1;
+  static final int CALL_EXPR_PAREN = 2;
+  static final int CALL_EXPR_ARGUMENTS = 3;
+  static final int CONDITIONAL_EXPR_CONDITIONAL = 1;
+  static final int CONDITIONAL_EXPR_THEN_BRANCH = 2;
+  static final int CONDITIONAL_EXPR_ELSE_BRANCH = 3;
+  static final int FUNCTION_EXPR_START = 1;
+  static final int FUNCTION_EXPR_PARAMS = 2;
+  static final int FUNCTION_EXPR_BODY = 3;
+  static final int GET_EXPR_OBJECT = 1;
+  static final int GET_EXPR_NAME = 2;
+  static final int GROUPING_EXPR_EXPRESSION = 1;
+  static final int LITERAL_EXPR_VALUE = 1;
+  static final int LOGICAL_EXPR_LEFT = 1;
+  static final int LOGICAL_EXPR_OPERATOR = 2;
+  static final int LOGICAL_EXPR_RIGHT = 3;
+  static final int SET_EXPR_OBJECT = 1;
+  static final int SET_EXPR_NAME = 2;
+  static final int SET_EXPR_VALUE = 3;
+  static final int THIS_EXPR_KEYWORD = 1;
+  static final int THIS_EXPR_DISTANCE = 2;
+  static final int THIS_EXPR_SLOT = 3;
+  static final int UNARY_EXPR_OPERATOR = 1;
+  static final int UNARY_EXPR_RIGHT = 2;
+  static final int VARIABLE_EXPR_NAME = 1;
+  static final int VARIABLE_EXPR_DISTANCE = 2;
+  static final int VARIABLE_EXPR_SLOT = 3;
+  static final int BLOCK_STMT_STATEMENTS = 1;
+  static final int CLASS_STMT_NAME = 1;
+  static final int CLASS_STMT_METHODS = 2;
+  static final int EXPRESSION_STMT_EXPRESSION = 1;
+  static final int FUNCTION_STMT_NAME = 1;
+  static final int FUNCTION_STMT_FUNCTION = 2;
+  static final int IF_STMT_CONDITION = 1;
+  static final int IF_STMT_THEN_BRANCH = 2;
+  static final int IF_STMT_ELSE_BRANCH = 3;
+  static final int PRINT_STMT_EXPRESSION = 1;
+  static final int RETURN_STMT_KEYWORD = 1;
+  static final int RETURN_STMT_VALUE = 2;
+  static final int VAR_STMT_NAME = 1;
+  static final int VAR_STMT_INITIALIZER = 2;
+  static final int WHILE_STMT_CONDITION = 1;
+  static final int WHILE_STMT_BODY = 2;
+
+  final int[] nodes;
+  final int[] lists;
+  final Object[] constants;
+  final int statements;
+  // node offsets and their lines, sorted by node. see line().
+  final int[] lineNodes;
+  final int[] lines;
+
+  FlatAst(int[] nodes, int[] lists, Object[] constants, int statements, int[] lineNodes, int[] lines) {
+    this.nodes = nodes;
+    this.lists = lists;
+    this.constants = constants;
+    this.statements = statements;
+    this.lineNodes = lineNodes;
+    this.lines = lines;
+  }
+
+  private FlatAst(Encoder encoder, int statements) {
+    this.nodes = Arrays.copyOf(encoder.nodes, encoder.nodeCount);
+    this.lists = Arrays.copyOf(encoder.lists, encoder.listCount);
+    this.constants = encoder.constants.toArray();
+    this.statements = statements;
+    this.lineNodes = Arrays.copyOf(encoder.lineNodes, encoder.lineCount);
+    this.lines = Arrays.copyOf(encoder.lines, encoder.lineCount);
+  }
+
+  static FlatAst encode(List<Stmt> statements, Interpreter interpreter) {
+    Encoder encoder = new Encoder(interpreter);
+    return new FlatAst(encoder, encoder.stmts(statements));
+  }
+
+  // rebuilds the tree, registering each variable's resolution with the interpreter the way the Resolver
+  // would. tokens get back their lexeme and line, which is all the Interpreter looks at.
+  List<Stmt> decode(Interpreter interpreter) {
+    return new Decoder(this, interpreter).stmts(statements, Stmt.class);
+  }
+
+  Kind kind(int node) {
+    return KINDS[nodes[node]];
+  }
+
+  // line of the closest node at or before this one that came with a token.
+  int line(int node) {
+    int index = Arrays.binarySearch(lineNodes, node);
+    if (index < 0) index = -index - 2;
+    return index < 0 ? 0 : lines[index];
+  }
+
+  // approximate footprint of the encoding, excluding the constants themselves.
+  long sizeInBytes() {
+    return 4L * (nodes.length + lists.length + lineNodes.length + lines.length) +
+           4L * constants.length;
+  }
+
+  private static final class Encoder implements Expr.Visitor<Integer>, Stmt.Visitor<Integer> {
+    private final Interpreter interpreter;
+    private int[] nodes = new int[1024];
+    private int nodeCount = 0;
+    private int[] lists = new int[256];
+    private int listCount = 0;
+    private final List<Object> constants = new ArrayList<>();
+    private final Map<Object, Integer> constantIndices = new HashMap<>();
+    private int[] lineNodes = new int[256];
+    private int[] lines = new int[256];
+    private int lineCount = 0;
+
+    Encoder(Interpreter interpreter) {
+      this.interpreter = interpreter;
+    }
+
+    @Override
+    public Integer visitAssignExpr(Expr.Assign expr) {
+      int node = node(Kind.ASSIGN_EXPR, 4);
+      line(node, expr.name);
+      set(node + ASSIGN_EXPR_NAME, constant(expr.name.lexeme));
+      set(node + ASSIGN_EXPR_VALUE, expr(expr.value));
+      ResolvedVarInfo info = interpreter.resolution(expr);
+      set(node + ASSIGN_EXPR_DISTANCE, info == null ? -1 : info.distance());
+      set(node + ASSIGN_EXPR_SLOT, info == null ? -1 : info.slot());
+      return node;
+    }
+
+    @Override
+    public Integer visitBinaryExpr(Expr.Binary expr) {
+      int node = node(Kind.BINARY_EXPR, 3);
+      line(node, expr.operator);
+      set(node + BINARY_EXPR_LEFT, expr(expr.left));
+      set(node + BINARY_EXPR_OPERATOR, Opcode.valueOf(expr.operator.type.name()).ordinal());
+      set(node + BINARY_EXPR_RIGHT, expr(expr.right));
+      return node;
+    }
+
+    @Override
+    public Integer visitCallExpr(Expr.Call expr) {
+      int node = node(Kind.CALL_EXPR, 3);
+      line(node, expr.paren);
+      set(node + CALL_EXPR_CALLEE, expr(expr.callee));
+      set(node + CALL_EXPR_PAREN, constant(expr.paren.lexeme));
+      set(node + CALL_EXPR_ARGUMENTS, exprs(expr.arguments));
+      return node;
+    }
+
+    @Override
+    public Integer visitConditionalExpr(Expr.Conditional expr) {
+      int node = node(Kind.CONDITIONAL_EXPR, 3);
+      set(node + CONDITIONAL_EXPR_CONDITIONAL, expr(expr.conditional));
+      set(node + CONDITIONAL_EXPR_THEN_BRANCH, expr(expr.thenBranch));
+      set(node + CONDITIONAL_EXPR_ELSE_BRANCH, expr(expr.elseBranch));
+      return node;
+    }
+
+    @Override
+    public Integer visitFunctionExpr(Expr.Function expr) {
+      int node = node(Kind.FUNCTION_EXPR, 3);
+      line(node, expr.start);
+      set(node + FUNCTION_EXPR_START, constant(expr.start.lexeme));
+      set(node + FUNCTION_EXPR_PARAMS, tokens(expr.params));
+      set(node + FUNCTION_EXPR_BODY, stmts(expr.body));
+      return node;
+    }
+
+    @Override
+    public Integer visitGetExpr(Expr.Get expr) {
+      int node = node(Kind.GET_EXPR, 2);
+      line(node, expr.name);
+      set(node + GET_EXPR_OBJECT, expr(expr.object));
+      set(node + GET_EXPR_NAME, constant(expr.name.lexeme));
+      return node;
+    }
+
+    @Override
+    public Integer visitGroupingExpr(Expr.Grouping expr) {
+      int node = node(Kind.GROUPING_EXPR, 1);
+      set(node + GROUPING_EXPR_EXPRESSION, expr(expr.expression));
+      return node;
+    }
+
+    @Override
+    public Integer visitLiteralExpr(Expr.Literal expr) {
+      int node = node(Kind.LITERAL_EXPR, 1);
+      set(node + LITERAL_EXPR_VALUE, constant(expr.value));
+      return node;
+    }
+
+    @Override
+    public Integer visitLogicalExpr(Expr.Logical expr) {
+      int node = node(Kind.LOGICAL_EXPR, 3);
+      line(node, expr.operator);
+      set(node + LOGICAL_EXPR_LEFT, expr(expr.left));
+      set(node + LOGICAL_EXPR_OPERATOR, Opcode.valueOf(expr.operator.type.name()).ordinal());
+      set(node + LOGICAL_EXPR_RIGHT, expr(expr.right));
+      return node;
+    }
+
+    @Override
+    public Integer visitSetExpr(Expr.Set expr) {
+      int node = node(Kind.SET_EXPR, 3);
+      line(node, expr.name);
+      set(node + SET_EXPR_OBJECT, expr(expr.object));
+      set(node + SET_EXPR_NAME, constant(expr.name.lexeme));
+      set(node + SET_EXPR_VALUE, expr(expr.value));
+      return node;
+    }
+
+    @Override
+    public Integer visitThisExpr(Expr.This expr) {
+      int node = node(Kind.THIS_EXPR, 3);
+      line(node, expr.keyword);
+      set(node + THIS_EXPR_KEYWORD, constant(expr.keyword.lexeme));
+      ResolvedVarInfo info = interpreter.resolution(expr);
+      set(node + THIS_EXPR_DISTANCE, info == null ? -1 : info.distance());
+      set(node + THIS_EXPR_SLOT, info == null ? -1 : info.slot());
+      return node;
+    }
+
+    @Override
+    public Integer visitUnaryExpr(Expr.Unary expr) {
+      int node = node(Kind.UNARY_EXPR, 2);
+      line(node, expr.operator);
+      set(node + UNARY_EXPR_OPERATOR, Opcode.valueOf(expr.operator.type.name()).ordinal());
+      set(node + UNARY_EXPR_RIGHT, expr(expr.right));
+      return node;
+    }
+
+    @Override
+    public Integer visitVariableExpr(Expr.Variable expr) {
+      int node = node(Kind.VARIABLE_EXPR, 3);
+      line(node, expr.name);
+      set(node + VARIABLE_EXPR_NAME, constant(expr.name.lexeme));
+      ResolvedVarInfo info = interpreter.resolution(expr);
+      set(node + VARIABLE_EXPR_DISTANCE, info == null ? -1 : info.distance());
+      set(node + VARIABLE_EXPR_SLOT, info == null ? -1 : info.slot());
+      return node;
+    }
+
+    @Override
+    public Integer visitBlockStmt(Stmt.Block stmt) {
+      int node = node(Kind.BLOCK_STMT, 1);
+      set(node + BLOCK_STMT_STATEMENTS, stmts(stmt.statements));
+      return node;
+    }
+
+    @Override
+    public Integer visitBreakStmt(Stmt.Break stmt) {
+      int node = node(Kind.BREAK_STMT, 0);
+      return node;
+    }
+
+    @Override
+    public Integer visitClassStmt(Stmt.Class stmt) {
+      int node = node(Kind.CLASS_STMT, 2);
+      line(node, stmt.name);
+      set(node + CLASS_STMT_NAME, constant(stmt.name.lexeme));
+      set(node + CLASS_STMT_METHODS, stmts(stmt.methods));
+      return node;
+    }
+
+    @Override
+    public Integer visitExpressionStmt(Stmt.Expression stmt) {
+      int node = node(Kind.EXPRESSION_STMT, 1);
+      set(node + EXPRESSION_STMT_EXPRESSION, expr(stmt.expression));
+      return node;
+    }
+
+    @Override
+    public Integer visitFunctionStmt(Stmt.Function stmt) {
+      int node = node(Kind.FUNCTION_STMT, 2);
+      line(node, stmt.name);
+      set(node + FUNCTION_STMT_NAME, constant(stmt.name.lexeme));
+      set(node + FUNCTION_STMT_FUNCTION, expr(stmt.function));
+      return node;
+    }
+
+    @Override
+    public Integer visitIfStmt(Stmt.If stmt) {
+      int node = node(Kind.IF_STMT, 3);
+      set(node + IF_STMT_CONDITION, expr(stmt.condition));
+      set(node + IF_STMT_THEN_BRANCH, stmt(stmt.thenBranch));
+      set(node + IF_STMT_ELSE_BRANCH, stmt(stmt.elseBranch));
+      return node;
+    }
+
+    @Override
+    public Integer visitPrintStmt(Stmt.Print stmt) {
+      int node = node(Kind.PRINT_STMT, 1);
+      set(node + PRINT_STMT_EXPRESSION, expr(stmt.expression));
+      return node;
+    }
+
+    @Override
+    public Integer visitReturnStmt(Stmt.Return stmt) {
+      int node = node(Kind.RETURN_STMT, 2);
+      line(node, stmt.keyword);
+      set(node + RETURN_STMT_KEYWORD, constant(stmt.keyword.lexeme));
+      set(node + RETURN_STMT_VALUE, expr(stmt.value));
+      return node;
+    }
+
+    @Override
+    public Integer visitVarStmt(Stmt.Var stmt) {
+      int node = node(Kind.VAR_STMT, 2);
+      line(node, stmt.name);
+      set(node + VAR_STMT_NAME, constant(stmt.name.lexeme));
+      set(node + VAR_STMT_INITIALIZER, expr(stmt.initializer));
+      return node;
+    }
+
+    @Override
+    public Integer visitWhileStmt(Stmt.While stmt) {
+      int node = node(Kind.WHILE_STMT, 2);
+      set(node + WHILE_STMT_CONDITION, expr(stmt.condition));
+      set(node + WHILE_STMT_BODY, stmt(stmt.body));
+      return node;
+    }
+
+    private int node(Kind kind, int fields) {
+      if (nodeCount + fields + 1 > nodes.length) {
+        nodes = Arrays.copyOf(nodes, Math.max(nodes.length * 2, nodeCount + fields + 1));
+      }
+      int node = nodeCount;
+      nodes[node] = kind.ordinal();
+      nodeCount += fields + 1;
+      return node;
+    }
+
+    // note: a method rather than `nodes[i] = expr(...)`, since encoding the child may reallocate `nodes`.
+    private void set(int index, int value) {
+      nodes[index] = value;
+    }
+
+    private void line(int node, Token token) {
+      if (lineCount == lines.length) {
+        lineNodes = Arrays.copyOf(lineNodes, lineCount * 2);
+        lines = Arrays.copyOf(lines, lineCount * 2);
+      }
+      lineNodes[lineCount] = node;
+      lines[lineCount++] = token.line;
+    }
+
+    private int constant(Object value) {
+      Object key = value == null ? Encoder.class : value;
+      Integer index = constantIndices.get(key);
+      if (index == null) {
+        index = constants.size();
+        constants.add(value);
+        constantIndices.put(key, index);
+      }
+      return index;
+    }
+
+    private int expr(Expr expr) {
+      return expr == null ? -1 : expr.accept(this);
+    }
+
+    private int stmt(Stmt stmt) {
+      return stmt == null ? -1 : stmt.accept(this);
+    }
+
+    private int list(int[] elements) {
+      if (listCount + elements.length + 1 > lists.length) {
+        lists = Arrays.copyOf(lists, Math.max(lists.length * 2, listCount + elements.length + 1));
+      }
+      int list = listCount;
+      lists[listCount++] = elements.length;
+      System.arraycopy(elements, 0, lists, listCount, elements.length);
+      listCount += elements.length;
+      return list;
+    }
+
+    private int exprs(List<? extends Expr> exprs) {
+      int[] elements = new int[exprs.size()];
+      for (int i = 0; i < elements.length; i++) elements[i] = expr(exprs.get(i));
+      return list(elements);
+    }
+
+    int stmts(List<? extends Stmt> stmts) {
+      int[] elements = new int[stmts.size()];
+      for (int i = 0; i < elements.length; i++) elements[i] = stmt(stmts.get(i));
+      return list(elements);
+    }
+
+    private int tokens(List<Token> tokens) {
+      int[] elements = new int[tokens.size()];
+      for (int i = 0; i < elements.length; i++) elements[i] = constant(tokens.get(i).lexeme);
+      return list(elements);
+    }
+  }
+
+  private static final class Decoder {
+    private final FlatAst ast;
+    private final int[] nodes;
+    private final Interpreter interpreter;
+
+    Decoder(FlatAst ast, Interpreter interpreter) {
+      this.ast = ast;
+      this.nodes = ast.nodes;
+      this.interpreter = interpreter;
+    }
+
+    Expr expr(int node) {
+      if (node == -1) return null;
+
+      switch (ast.kind(node)) {
+        case ASSIGN_EXPR: {
+          Expr.Assign expr = new Expr.Assign(token(TokenType.IDENTIFIER, nodes[node + ASSIGN_EXPR_NAME], node),
+              expr(nodes[node + ASSIGN_EXPR_VALUE]));
+          resolve(expr, node + ASSIGN_EXPR_DISTANCE, node + ASSIGN_EXPR_SLOT);
+          return expr;
+        }
+        case BINARY_EXPR: {
+          Expr.Binary expr = new Expr.Binary(expr(nodes[node + BINARY_EXPR_LEFT]),
+              operator(nodes[node + BINARY_EXPR_OPERATOR], node),
+              expr(nodes[node + BINARY_EXPR_RIGHT]));
+          return expr;
+        }
+        case CALL_EXPR: {
+          Expr.Call expr = new Expr.Call(expr(nodes[node + CALL_EXPR_CALLEE]),
+              token(TokenType.RIGHT_PAREN, nodes[node + CALL_EXPR_PAREN], node),
+              exprs(nodes[node + CALL_EXPR_ARGUMENTS]));
+          return expr;
+        }
+        case CONDITIONAL_EXPR: {
+          Expr.Conditional expr = new Expr.Conditional(expr(nodes[node + CONDITIONAL_EXPR_CONDITIONAL]),
+              expr(nodes[node + CONDITIONAL_EXPR_THEN_BRANCH]),
+              expr(nodes[node + CONDITIONAL_EXPR_ELSE_BRANCH]));
+          return expr;
+        }
+        case FUNCTION_EXPR: {
+          Expr.Function expr = new Expr.Function(token(TokenType.IDENTIFIER, nodes[node + FUNCTION_EXPR_START], node),
+              tokens(nodes[node + FUNCTION_EXPR_PARAMS], node),
+              stmts(nodes[node + FUNCTION_EXPR_BODY], Stmt.class),
+              null);
+          return expr;
+        }
+        case GET_EXPR: {
+          Expr.Get expr = new Expr.Get(expr(nodes[node + GET_EXPR_OBJECT]),
+              token(TokenType.IDENTIFIER, nodes[node + GET_EXPR_NAME], node));
+          return expr;
+        }
+        case GROUPING_EXPR: {
+          Expr.Grouping expr = new Expr.Grouping(expr(nodes[node + GROUPING_EXPR_EXPRESSION]));
+          return expr;
+        }
+        case LITERAL_EXPR: {
+          Expr.Literal expr = new Expr.Literal(ast.constants[nodes[node + LITERAL_EXPR_VALUE]]);
+          return expr;
+        }
+        case LOGICAL_EXPR: {
+          Expr.Logical expr = new Expr.Logical(expr(nodes[node + LOGICAL_EXPR_LEFT]),
+              operator(nodes[node + LOGICAL_EXPR_OPERATOR], node),
+              expr(nodes[node + LOGICAL_EXPR_RIGHT]));
+          return expr;
+        }
+        case SET_EXPR: {
+          Expr.Set expr = new Expr.Set(expr(nodes[node + SET_EXPR_OBJECT]),
+              token(TokenType.IDENTIFIER, nodes[node + SET_EXPR_NAME], node),
+              expr(nodes[node + SET_EXPR_VALUE]));
+          return expr;
+        }
+        case THIS_EXPR: {
+          Expr.This expr = new Expr.This(keyword(nodes[node + THIS_EXPR_KEYWORD], node));
+          resolve(expr, node + THIS_EXPR_DISTANCE, node + THIS_EXPR_SLOT);
+          return expr;
+        }
+        case UNARY_EXPR: {
+          Expr.Unary expr = new Expr.Unary(operator(nodes[node + UNARY_EXPR_OPERATOR], node),
+              expr(nodes[node + UNARY_EXPR_RIGHT]));
+          return expr;
+        }
+        case VARIABLE_EXPR: {
+          Expr.Variable expr = new Expr.Variable(token(TokenType.IDENTIFIER, nodes[node + VARIABLE_EXPR_NAME], node));
+          resolve(expr, node + VARIABLE_EXPR_DISTANCE, node + VARIABLE_EXPR_SLOT);
+          return expr;
+        }
+        default:
+          throw new IllegalStateException("Not an Expr node: " + ast.kind(node));
+      }
+    }
+
+    Stmt stmt(int node) {
+      if (node == -1) return null;
+
+      switch (ast.kind(node)) {
+        case BLOCK_STMT: {
+          Stmt.Block stmt = new Stmt.Block(stmts(nodes[node + BLOCK_STMT_STATEMENTS], Stmt.class));
+          return stmt;
+        }
+        case BREAK_STMT: {
+          Stmt.Break stmt = new Stmt.Break();
+          return stmt;
+        }
+        case CLASS_STMT: {
+          Stmt.Class stmt = new Stmt.Class(token(TokenType.IDENTIFIER, nodes[node + CLASS_STMT_NAME], node),
+              stmts(nodes[node + CLASS_STMT_METHODS], Stmt.Function.class));
+          return stmt;
+        }
+        case EXPRESSION_STMT: {
+          Stmt.Expression stmt = new Stmt.Expression(expr(nodes[node + EXPRESSION_STMT_EXPRESSION]));
+          return stmt;
+        }
+        case FUNCTION_STMT: {
+          Stmt.Function stmt = new Stmt.Function(token(TokenType.IDENTIFIER, nodes[node + FUNCTION_STMT_NAME], node),
+              (Expr.Function)expr(nodes[node + FUNCTION_STMT_FUNCTION]));
+          return stmt;
+        }
+        case IF_STMT: {
+          Stmt.If stmt = new Stmt.If(expr(nodes[node + IF_STMT_CONDITION]),
+              stmt(nodes[node + IF_STMT_THEN_BRANCH]),
+              stmt(nodes[node + IF_STMT_ELSE_BRANCH]));
+          return stmt;
+        }
+        case PRINT_STMT: {
+          Stmt.Print stmt = new Stmt.Print(expr(nodes[node + PRINT_STMT_EXPRESSION]));
+          return stmt;
+        }
+        case RETURN_STMT: {
+          Stmt.Return stmt = new Stmt.Return(keyword(nodes[node + RETURN_STMT_KEYWORD], node),
+              expr(nodes[node + RETURN_STMT_VALUE]));
+          return stmt;
+        }
+        case VAR_STMT: {
+          Stmt.Var stmt = new Stmt.Var(token(TokenType.IDENTIFIER, nodes[node + VAR_STMT_NAME], node),
+              expr(nodes[node + VAR_STMT_INITIALIZER]));
+          return stmt;
+        }
+        case WHILE_STMT: {
+          Stmt.While stmt = new Stmt.While(expr(nodes[node + WHILE_STMT_CONDITION]),
+              stmt(nodes[node + WHILE_STMT_BODY]));
+          return stmt;
+        }
+        default:
+          throw new IllegalStateException("Not a Stmt node: " + ast.kind(node));
+      }
+    }
+
+    private void resolve(Expr expr, int distance, int slot) {
+      if (nodes[distance] != -1) {
+        interpreter.resolve(expr, new ResolvedVarInfo(nodes[distance], nodes[slot]));
+      }
+    }
+
+    private Token token(TokenType type, int constant, int node) {
+      return new Token(type, (String)ast.constants[constant], null, ast.line(node));
+    }
+
+    private Token operator(int opcode, int node) {
+      Opcode op = OPCODES[opcode];
+      return new Token(TokenType.valueOf(op.name()), op.lexeme, null, ast.line(node));
+    }
+
+    // 'this' or 'return'.
+    private Token keyword(int constant, int node) {
+      String lexeme = (String)ast.constants[constant];
+      return new Token(TokenType.valueOf(lexeme.toUpperCase()), lexeme, null, ast.line(node));
+    }
+
+    private List<Token> tokens(int list, int node) {
+      List<Token> tokens = new ArrayList<>();
+      for (int i = 1; i <= ast.lists[list]; i++) {
+        tokens.add(token(TokenType.IDENTIFIER, ast.lists[list + i], node));
+      }
+      return tokens;
+    }
+
+    private List<Expr> exprs(int list) {
+      List<Expr> exprs = new ArrayList<>();
+      for (int i = 1; i <= ast.lists[list]; i++) exprs.add(expr(ast.lists[list + i]));
+      return exprs;
+    }
+
+    <T extends Stmt> List<T> stmts(int list, Class<T> type) {
+      List<T> stmts = new ArrayList<>();
+      for (int i = 1; i <= ast.lists[list]; i++) stmts.add(type.cast(stmt(ast.lists[list + i])));
+      return stmts;
+    }
+  }
+}
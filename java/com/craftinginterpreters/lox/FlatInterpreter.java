@@ -0,0 +1,418 @@
+package com.craftinginterpreters.lox;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.craftinginterpreters.lox.FlatAst.*;
+
+// tree-walking interpreter over the flat encoding (see FlatAst), run with jlox --flat. it exists to compare cache
+// behaviour and heap size against the object tree, so it mirrors Interpreter's semantics rather than sharing its
+// code: FlatFunction, FlatClass and FlatInstance are LoxFunction, LoxClass and LoxInstance over node offsets.
+class FlatInterpreter {
+  private final FlatAst ast;
+  private final int[] nodes;
+  private final int[] lists;
+  private final Object[] constants;
+
+  // only passed through to native functions, which expect one.
+  private final Interpreter interpreter;
+
+  private final Map<String, Object> globals = new HashMap<>();
+  private Environment environment;
+
+  private static class LoopBreak extends RuntimeException {}
+
+  private static class FlatFunction implements LoxCallable {
+    private final String name;
+    private final FlatInterpreter interpreter;
+    private final int declaration;
+    private final Environment closure;
+    private final boolean isInitializer;
+
+    FlatFunction(String name, FlatInterpreter interpreter, int declaration, Environment closure,
+                 boolean isInitializer) {
+      this.name = name;
+      this.interpreter = interpreter;
+      this.declaration = declaration;
+      this.closure = closure;
+      this.isInitializer = isInitializer;
+    }
+
+    // 'this' is slot 0 of an environment of its own, like LoxFunction.bind().
+    FlatFunction bind(FlatInstance instance) {
+      Environment environment = new Environment(closure);
+      environment.define(instance);
+      return new FlatFunction(name, interpreter, declaration, environment, isInitializer);
+    }
+
+    @Override
+    public int arity() {
+      return interpreter.lists[interpreter.nodes[declaration + FUNCTION_EXPR_PARAMS]];
+    }
+
+    @Override
+    public Object call(Interpreter ignored, List<Object> arguments) {
+      return interpreter.call(this, arguments);
+    }
+
+    @Override
+    public String toString() {
+      if (name == null) return "<lambda#" + this.hashCode() + ">";
+      return "<fn " + name + ">";
+    }
+  }
+
+  private static class FlatClass implements LoxCallable {
+    private final String name;
+    private final Map<String, FlatFunction> methods;
+
+    FlatClass(String name, Map<String, FlatFunction> methods) {
+      this.name = name;
+      this.methods = methods;
+    }
+
+    @Override
+    public int arity() {
+      FlatFunction initializer = methods.get("init");
+      return initializer == null ? 0 : initializer.arity();
+    }
+
+    @Override
+    public Object call(Interpreter ignored, List<Object> arguments) {
+      FlatInstance instance = new FlatInstance(this);
+      FlatFunction initializer = methods.get("init");
+      if (initializer != null) initializer.bind(instance).call(ignored, arguments);
+      return instance;
+    }
+
+    @Override
+    public String toString() {
+      return name;
+    }
+  }
+
+  private static class FlatInstance {
+    private final FlatClass klass;
+    private final Map<String, Object> fields = new HashMap<>();
+
+    FlatInstance(FlatClass klass) {
+      this.klass = klass;
+    }
+
+    @Override
+    public String toString() {
+      return klass.name + " instance";
+    }
+  }
+
+  FlatInterpreter(FlatAst ast, Interpreter interpreter) {
+    this.ast = ast;
+    this.nodes = ast.nodes;
+    this.lists = ast.lists;
+    this.constants = ast.constants;
+    this.interpreter = interpreter;
+    globals.putAll(interpreter.globals); // natives
+  }
+
+  void interpret() {
+    try {
+      int list = ast.statements;
+      for (int i = 1; i <= lists[list]; i++) {
+        execute(lists[list + i]);
+      }
+    } catch (RuntimeError error) {
+      Lox.runtimeError(error);
+    }
+  }
+
+  private Object call(FlatFunction function, List<Object> arguments) {
+    Environment environment = new Environment(function.closure);
+    for (Object argument : arguments) {
+      environment.define(argument);
+    }
+
+    try {
+      executeBlock(nodes[function.declaration + FUNCTION_EXPR_BODY], environment);
+    } catch (Return returnValue) {
+      if (function.isInitializer) return function.closure.getAt(0, 0);
+      return returnValue.value;
+    }
+    if (function.isInitializer) return function.closure.getAt(0, 0);
+    return null;
+  }
+
+  private void executeBlock(int list, Environment environment) {
+    Environment previous = this.environment;
+    try {
+      this.environment = environment;
+
+      for (int i = 1; i <= lists[list]; i++) {
+        execute(lists[list + i]);
+      }
+    } finally {
+      this.environment = previous;
+    }
+  }
+
+  private void execute(int node) {
+    switch (ast.kind(node)) {
+      case BLOCK_STMT:
+        executeBlock(nodes[node + BLOCK_STMT_STATEMENTS], new Environment(environment));
+        break;
+      case BREAK_STMT:
+        throw new LoopBreak();
+      case EXPRESSION_STMT:
+        evaluate(nodes[node + EXPRESSION_STMT_EXPRESSION]);
+        break;
+      case FUNCTION_STMT: {
+        String name = (String)constants[nodes[node + FUNCTION_STMT_NAME]];
+        define(name, new FlatFunction(name, this, nodes[node + FUNCTION_STMT_FUNCTION], environment, false));
+        break;
+      }
+      case IF_STMT:
+        if (Interpreter.isTruthy(evaluate(nodes[node + IF_STMT_CONDITION]))) {
+          execute(nodes[node + IF_STMT_THEN_BRANCH]);
+        } else if (nodes[node + IF_STMT_ELSE_BRANCH] != -1) {
+          execute(nodes[node + IF_STMT_ELSE_BRANCH]);
+        }
+        break;
+      case PRINT_STMT:
+        System.out.println(Interpreter.stringify(evaluate(nodes[node + PRINT_STMT_EXPRESSION])));
+        break;
+      case RETURN_STMT: {
+        int value = nodes[node + RETURN_STMT_VALUE];
+        throw new Return(value == -1 ? null : evaluate(value));
+      }
+      case VAR_STMT: {
+        int initializer = nodes[node + VAR_STMT_INITIALIZER];
+        Object value = initializer == -1 ? Environment.uninitialized : evaluate(initializer);
+        define((String)constants[nodes[node + VAR_STMT_NAME]], value);
+        break;
+      }
+      case WHILE_STMT:
+        try {
+          while (Interpreter.isTruthy(evaluate(nodes[node + WHILE_STMT_CONDITION]))) {
+            execute(nodes[node + WHILE_STMT_BODY]);
+          }
+        } catch (LoopBreak b) {
+        }
+        break;
+      case CLASS_STMT:
+        declareClass(node);
+        break;
+      default:
+        throw new RuntimeException("Internal error: unhandled statement " + ast.kind(node));
+    }
+  }
+
+  private Object evaluate(int node) {
+    switch (ast.kind(node)) {
+      case ASSIGN_EXPR:
+        return assign(node);
+      case BINARY_EXPR:
+        return binary(node);
+      case CALL_EXPR:
+        return call(node);
+      case CONDITIONAL_EXPR:
+        return Interpreter.isTruthy(evaluate(nodes[node + CONDITIONAL_EXPR_CONDITIONAL])) ?
+               evaluate(nodes[node + CONDITIONAL_EXPR_THEN_BRANCH]) :
+               evaluate(nodes[node + CONDITIONAL_EXPR_ELSE_BRANCH]);
+      case FUNCTION_EXPR:
+        return new FlatFunction(null, this, node, environment, false);
+      case GROUPING_EXPR:
+        return evaluate(nodes[node + GROUPING_EXPR_EXPRESSION]);
+      case LITERAL_EXPR:
+        return constants[nodes[node + LITERAL_EXPR_VALUE]];
+      case LOGICAL_EXPR: {
+        Object left = evaluate(nodes[node + LOGICAL_EXPR_LEFT]);
+        if (OPCODES[nodes[node + LOGICAL_EXPR_OPERATOR]] == Opcode.OR) {
+          if (Interpreter.isTruthy(left)) return left;
+        } else {
+          if (!Interpreter.isTruthy(left)) return left;
+        }
+        return evaluate(nodes[node + LOGICAL_EXPR_RIGHT]);
+      }
+      case UNARY_EXPR: {
+        Object right = evaluate(nodes[node + UNARY_EXPR_RIGHT]);
+        if (OPCODES[nodes[node + UNARY_EXPR_OPERATOR]] == Opcode.BANG) return !Interpreter.isTruthy(right);
+        if (!(right instanceof Double)) throw error(node, "Operand must be a number.");
+        return -(double)right;
+      }
+      case VARIABLE_EXPR: {
+        Object value = lookUpVariable(node, nodes[node + VARIABLE_EXPR_NAME],
+                                      nodes[node + VARIABLE_EXPR_DISTANCE], nodes[node + VARIABLE_EXPR_SLOT]);
+        if (value == Environment.uninitialized) {
+          throw error(node, "Variable must be initialized before use.");
+        }
+        return value;
+      }
+      case GET_EXPR:
+        return get(node);
+      case SET_EXPR: {
+        Object object = evaluate(nodes[node + SET_EXPR_OBJECT]);
+        if (!(object instanceof FlatInstance)) throw error(node, "Only instances have fields.");
+        Object value = evaluate(nodes[node + SET_EXPR_VALUE]);
+        ((FlatInstance)object).fields.put((String)constants[nodes[node + SET_EXPR_NAME]], value);
+        return value;
+      }
+      case THIS_EXPR:
+        return environment.getAt(nodes[node + THIS_EXPR_DISTANCE], nodes[node + THIS_EXPR_SLOT]);
+      default:
+        throw new RuntimeException("Internal error: unhandled expression " + ast.kind(node));
+    }
+  }
+
+  // the class's slot is declared before its methods close over the environment, like withForwardDeclare().
+  private void declareClass(int node) {
+    String name = (String)constants[nodes[node + CLASS_STMT_NAME]];
+    int slot = environment != null ? environment.declare() : -1;
+
+    Map<String, FlatFunction> methods = new HashMap<>();
+    int list = nodes[node + CLASS_STMT_METHODS];
+    for (int i = 1; i <= lists[list]; i++) {
+      int method = lists[list + i];
+      String methodName = (String)constants[nodes[method + FUNCTION_STMT_NAME]];
+      methods.put(methodName, new FlatFunction(methodName, this, nodes[method + FUNCTION_STMT_FUNCTION], environment,
+                                               methodName.equals("init")));
+    }
+
+    FlatClass klass = new FlatClass(name, methods);
+    if (environment != null) {
+      environment.assignAt(0, slot, klass);
+    } else {
+      globals.put(name, klass);
+    }
+  }
+
+  private Object get(int node) {
+    Object object = evaluate(nodes[node + GET_EXPR_OBJECT]);
+    String name = (String)constants[nodes[node + GET_EXPR_NAME]];
+
+    if (object instanceof FlatInstance) {
+      FlatInstance instance = (FlatInstance)object;
+      if (instance.fields.containsKey(name)) return instance.fields.get(name);
+
+      FlatFunction method = instance.klass.methods.get(name);
+      if (method != null) return method.bind(instance);
+      throw error(node, "Undefined property '" + name + "'.");
+    }
+    // note: natives build theirs as LoxInstances (e.g. bench()'s results).
+    if (object instanceof LoxInstance) {
+      return ((LoxInstance)object).get(new Token(TokenType.IDENTIFIER, name, null, ast.line(node)), null);
+    }
+
+    throw error(node, "Only instances have properties.");
+  }
+
+  private Object lookUpVariable(int node, int name, int distance, int slot) {
+    if (distance != -1) return environment.getAt(distance, slot);
+
+    String lexeme = (String)constants[name];
+    if (globals.containsKey(lexeme)) return globals.get(lexeme);
+    throw error(node, "Undefined variable '" + lexeme + "'.");
+  }
+
+  private Object assign(int node) {
+    Object value = evaluate(nodes[node + ASSIGN_EXPR_VALUE]);
+
+    int distance = nodes[node + ASSIGN_EXPR_DISTANCE];
+    if (distance != -1) {
+      environment.assignAt(distance, nodes[node + ASSIGN_EXPR_SLOT], value);
+    } else {
+      String name = (String)constants[nodes[node + ASSIGN_EXPR_NAME]];
+      if (!globals.containsKey(name)) throw error(node, "Undefined variable '" + name + "'.");
+      globals.put(name, value);
+    }
+
+    return value;
+  }
+
+  private Object binary(int node) {
+    Object left = evaluate(nodes[node + BINARY_EXPR_LEFT]);
+    Object right = evaluate(nodes[node + BINARY_EXPR_RIGHT]);
+    Opcode opcode = OPCODES[nodes[node + BINARY_EXPR_OPERATOR]];
+
+    switch (opcode) {
+      case BANG_EQUAL:
+        return !Interpreter.isEqual(left, right);
+      case EQUAL_EQUAL:
+        return Interpreter.isEqual(left, right);
+      case COMMA:
+        return right;
+      case PLUS:
+        if (left instanceof String || right instanceof String) {
+          return Interpreter.stringify(left) + Interpreter.stringify(right);
+        }
+        if (left instanceof Double && right instanceof Double) {
+          return (double)left + (double)right;
+        }
+        throw error(node, "Operands must be two numbers or two strings.");
+      default:
+        break;
+    }
+
+    if (!(left instanceof Double && right instanceof Double)) {
+      throw error(node, "Operands must be numbers.");
+    }
+    double a = (double)left;
+    double b = (double)right;
+
+    switch (opcode) {
+      case GREATER:
+        return a > b;
+      case GREATER_EQUAL:
+        return a >= b;
+      case LESS:
+        return a < b;
+      case LESS_EQUAL:
+        return a <= b;
+      case MINUS:
+        return a - b;
+      case SLASH:
+        if (b == 0) throw error(node, "Illegal division by 0");
+        return a / b;
+      case STAR:
+        return a * b;
+      default:
+        throw new RuntimeException("Internal error: unhandled binary expression");
+    }
+  }
+
+  private Object call(int node) {
+    Object callee = evaluate(nodes[node + CALL_EXPR_CALLEE]);
+
+    int list = nodes[node + CALL_EXPR_ARGUMENTS];
+    List<Object> arguments = new ArrayList<>();
+    for (int i = 1; i <= lists[list]; i++) {
+      arguments.add(evaluate(lists[list + i]));
+    }
+
+    if (!(callee instanceof LoxCallable)) {
+      throw error(node, "Can only call functions and classes.");
+    }
+
+    LoxCallable function = (LoxCallable)callee;
+    if (arguments.size() != function.arity()) {
+      throw error(node, "Expected " + function.arity() + " arguments but got " + arguments.size() + ".");
+    }
+    try {
+      return function.call(interpreter, arguments);
+    } catch (NativeError nativeError) {
+      throw error(node, nativeError.getMessage());
+    }
+  }
+
+  private void define(String name, Object value) {
+    if (environment != null) {
+      environment.define(value);
+    } else {
+      globals.put(name, value);
+    }
+  }
+
+  private RuntimeError error(int node, String message) {
+    return new RuntimeError(new Token(TokenType.EOF, "", null, ast.line(node)), message);
+  }
+}
@@ -0,0 +1,410 @@
+package com.craftinginterpreters.lox;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import static com.craftinginterpreters.lox.TokenType.*;
+
+// front end for callers that resubmit a whole buffer after every edit (e.g. an editor, see jlox --check).
+//
+// the buffer is kept as a sequence of top-level declarations, each owning a source range. an update diffs the new
+// buffer against the old one (common prefix and suffix), rescans only the text of the declarations the edit
+// touched, splits those tokens into declarations again, and parses and resolves just those. declarations before
+// the edit are reused as is, declarations after it are reused with their source ranges shifted, and if the edit
+// added or removed lines, with their lines (and their tokens' lines) shifted too.
+//
+// note: nothing else has to be re-resolved when a declaration changes. top-level names are globals, which the
+// Resolver never binds (they're looked up by name at runtime), so the resolution of one top-level declaration
+// can't depend on another. the exceptions that force more work are all lexical:
+// - declarations with errors are re-analysed on every update, so their diagnostics get reported again.
+// - an unbalanced '"' in the edited text could open a string running to the end, so that rescans to the end.
+//
+// errors go to the reporter it's made with, not through Lox, so a long-lived process can have several of these.
+class IncrementalFrontEnd {
+  private static final class Declaration {
+    final int start;
+    final int end;
+    final int line;
+    final List<Token> tokens;
+    final List<Stmt> statements;
+    final boolean hadError;
+
+    Declaration(int start, int end, int line, List<Token> tokens, List<Stmt> statements, boolean hadError) {
+      this.start = start;
+      this.end = end;
+      this.line = line;
+      this.tokens = tokens;
+      this.statements = statements;
+      this.hadError = hadError;
+    }
+
+    // note: moves the tokens, and with them the lines the statements report errors at, in place.
+    Declaration shift(int delta, int lines) {
+      if (delta == 0 && lines == 0) return this;
+      for (Token token : tokens) {
+        token.line += lines;
+      }
+      return new Declaration(start + delta, end + delta, line + lines, tokens, statements, hadError);
+    }
+  }
+
+  // tokens of the text being re-analysed, with their end offsets in the whole buffer.
+  private static final class Region {
+    final List<Token> tokens = new ArrayList<>();
+    int[] ends = new int[64];
+    boolean hadError = false;
+    // the line the scanned text ends on, where a full scan would put EOF if the region ends the buffer.
+    int endLine;
+
+    void scan(String source, int start, int end, int line, ErrorReporter reporter) {
+      Errors errors = new Errors(reporter);
+      Scanner scanner = new Scanner(source.substring(start, end), line, errors);
+      List<Token> scanned = scanner.scanTokens();
+      hadError |= errors.found;
+      endLine = scanned.get(scanned.size() - 1).line;
+
+      for (int i = 0; i < scanned.size() - 1; i++) { // skip EOF
+        if (tokens.size() == ends.length) ends = Arrays.copyOf(ends, ends.length * 2);
+        ends[tokens.size()] = start + scanner.tokenEnd(i);
+        tokens.add(scanned.get(i));
+      }
+    }
+  }
+
+  // passes errors on, and remembers there were some.
+  private static final class Errors implements ErrorReporter {
+    private final ErrorReporter reporter;
+    boolean found = false;
+
+    Errors(ErrorReporter reporter) {
+      this.reporter = reporter;
+    }
+
+    @Override
+    public void report(int line, String where, String message) {
+      found = true;
+      reporter.report(line, where, message);
+    }
+
+    @Override
+    public void runtimeError(RuntimeError error) {
+      reporter.runtimeError(error);
+    }
+  }
+
+  private final ErrorReporter reporter;
+  private Interpreter interpreter;
+  private String source = "";
+  private List<Declaration> declarations = new ArrayList<>();
+  private boolean hadError = false;
+
+  // resolutions of replaced declarations stay in the interpreter's side table. once those outnumber the live
+  // ones, everything live is re-resolved into a fresh interpreter so memory stays proportional to the buffer.
+  private int resolvedDeclarations = 0;
+
+  private int reparsed = 0;
+
+  IncrementalFrontEnd(ErrorReporter reporter) {
+    this.reporter = reporter;
+    this.interpreter = newInterpreter();
+  }
+
+  // the interpreter holding the resolutions for the statements returned by the last update().
+  Interpreter interpreter() {
+    return interpreter;
+  }
+
+  // number of top-level declarations in the buffer passed to the last update().
+  int analyzed() {
+    return declarations.size();
+  }
+
+  // how many of those had to be parsed and resolved again.
+  int reparsed() {
+    return reparsed;
+  }
+
+  // whether that buffer has scan, parse or resolution errors. they were all reported again by that update().
+  boolean hadError() {
+    return hadError;
+  }
+
+  // returns the statements of the whole buffer. statements an earlier update() returned may have had their lines
+  // shifted since, but are otherwise left as they were.
+  List<Stmt> update(String newSource) {
+    int count = declarations.size();
+    int delta = newSource.length() - source.length();
+    // lines the edit added (or removed, if negative).
+    int lines = 0;
+    reparsed = 0;
+
+    // the old declarations [first, last] get replaced by whatever the new text in [start, end) holds.
+    int first = count;
+    int last = count - 1;
+    int start = newSource.length();
+    int end = newSource.length();
+    int line = 1;
+
+    if (count == 0) {
+      first = 0;
+      start = 0;
+    } else if (!newSource.equals(source)) {
+      int prefix = 0;
+      int limit = Math.min(source.length(), newSource.length());
+      while (prefix < limit && source.charAt(prefix) == newSource.charAt(prefix)) prefix++;
+
+      int suffix = 0;
+      limit -= prefix;
+      while (suffix < limit && source.charAt(source.length() - 1 - suffix) ==
+                               newSource.charAt(newSource.length() - 1 - suffix)) {
+        suffix++;
+      }
+
+      // start one declaration early, since an edit right after it (e.g. adding an 'else') can extend it.
+      first = Math.max(find(prefix) - 1, 0);
+      last = find(Math.max(source.length() - suffix - 1, prefix));
+
+      // a comment in the edited text runs to the end of its line, so don't stop in the middle of one.
+      while (last < count - 1 && !endsLine(newSource, declarations.get(last).end + delta)) last++;
+
+      start = declarations.get(first).start;
+      line = declarations.get(first).line;
+      end = declarations.get(last).end + delta;
+
+      String oldText = source.substring(start, declarations.get(last).end);
+      String newText = newSource.substring(start, end);
+      lines = count(newText, '\n') - count(oldText, '\n');
+      if (count(newText, '"') % 2 != 0) {
+        last = count - 1;
+        end = newSource.length();
+      }
+    }
+
+    List<Declaration> updated = new ArrayList<>(count + 1);
+    boolean hadError = false;
+
+    for (int i = 0; i < first; i++) {
+      Declaration declaration = reanalyzeIfFailed(newSource, declarations.get(i));
+      hadError |= declaration.hadError;
+      updated.add(declaration);
+    }
+
+    if (first <= last || count == 0) {
+      Region region = new Region();
+      region.scan(newSource, start, end, line, reporter);
+
+      // the edit may have opened a block that the following declarations now belong to.
+      List<int[]> split;
+      while (true) {
+        split = new ArrayList<>();
+        boolean complete = split(region.tokens, split);
+        if (complete || last >= count - 1) break;
+
+        Declaration next = declarations.get(++last);
+        region.scan(newSource, next.start + delta, next.end + delta, next.line + lines, reporter);
+        end = next.end + delta;
+      }
+
+      for (Declaration declaration : declare(region, split, start, end, line)) {
+        hadError |= declaration.hadError;
+        updated.add(declaration);
+      }
+    }
+
+    for (int i = last + 1; i < count; i++) {
+      Declaration declaration = reanalyzeIfFailed(newSource, declarations.get(i).shift(delta, lines));
+      hadError |= declaration.hadError;
+      updated.add(declaration);
+    }
+
+    source = newSource;
+    declarations = updated;
+    this.hadError = hadError;
+
+    if (resolvedDeclarations > 2 * declarations.size() + 64) compact();
+
+    List<Stmt> statements = new ArrayList<>();
+    for (Declaration declaration : declarations) {
+      statements.addAll(declaration.statements);
+    }
+    return statements;
+  }
+
+  // turns the declarations split out of a rescanned region into Declarations covering [start, end).
+  private List<Declaration> declare(Region region, List<int[]> split, int start, int end, int line) {
+    List<Declaration> result = new ArrayList<>();
+    if (split.isEmpty()) {
+      // nothing but whitespace and comments. keep the range covered anyway.
+      result.add(new Declaration(start, end, line, List.of(), new ArrayList<>(), region.hadError));
+      return result;
+    }
+
+    int from = start;
+    for (int i = 0; i < split.size(); i++) {
+      int[] range = split.get(i);
+      int to = i == split.size() - 1 ? end : region.ends[range[1] - 1];
+      int startLine = range[0] == 0 ? line : region.tokens.get(range[0] - 1).line;
+
+      Errors errors = new Errors(reporter);
+      List<Stmt> statements = analyze(region, range, errors);
+      List<Token> tokens = new ArrayList<>(region.tokens.subList(range[0], range[1]));
+      result.add(new Declaration(from, to, startLine, tokens, statements, errors.found || region.hadError));
+      from = to;
+    }
+
+    return result;
+  }
+
+  private Declaration reanalyzeIfFailed(String newSource, Declaration declaration) {
+    if (!declaration.hadError) return declaration;
+
+    Region region = new Region();
+    region.scan(newSource, declaration.start, declaration.end, declaration.line, reporter);
+
+    // the range stays the same, even if it no longer holds exactly one declaration.
+    List<int[]> split = new ArrayList<>();
+    split(region.tokens, split);
+    List<Stmt> statements = new ArrayList<>();
+    boolean hadError = region.hadError;
+    for (int[] range : split) {
+      Errors errors = new Errors(reporter);
+      statements.addAll(analyze(region, range, errors));
+      hadError |= errors.found;
+    }
+
+    return new Declaration(declaration.start, declaration.end, declaration.line, region.tokens, statements,
+                           hadError);
+  }
+
+  // parses and resolves the tokens [range[0], range[1]) of a region, reporting to `errors`.
+  private List<Stmt> analyze(Region region, int[] range, Errors errors) {
+    reparsed++;
+    List<Token> tokens = new ArrayList<>(region.tokens.subList(range[0], range[1]));
+    // note: "at end" errors should point where a full analysis would: the next token, or the end of the text.
+    int eofLine = range[1] < region.tokens.size() ? region.tokens.get(range[1]).line : region.endLine;
+    tokens.add(new Token(EOF, "", null, eofLine));
+
+    List<Stmt> statements = new Parser(tokens, false, errors).parse();
+    if (errors.found) return statements;
+
+    new Resolver(interpreter, errors).resolve(statements);
+    resolvedDeclarations++;
+    return statements;
+  }
+
+  private void compact() {
+    interpreter = newInterpreter();
+    resolvedDeclarations = 0;
+    for (Declaration declaration : declarations) {
+      if (declaration.hadError) continue;
+      new Resolver(interpreter, reporter).resolve(declaration.statements);
+      resolvedDeclarations++;
+    }
+  }
+
+  private Interpreter newInterpreter() {
+    return new Interpreter(new HashMap<>(), reporter, new PrintWriter(System.out, true));
+  }
+
+  // index of the declaration whose range contains the offset (in the old source).
+  private int find(int offset) {
+    int low = 0;
+    int high = declarations.size() - 1;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (declarations.get(mid).end <= offset) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  private static boolean endsLine(String source, int offset) {
+    while (offset < source.length()) {
+      char c = source.charAt(offset++);
+      if (c == '\n') return true;
+      if (c != ' ' && c != '\t' && c != '\r') return false;
+    }
+    return true;
+  }
+
+  private static int count(String text, char c) {
+    int count = 0;
+    for (int i = 0; i < text.length(); i++) {
+      if (text.charAt(i) == c) count++;
+    }
+    return count;
+  }
+
+  // splits tokens into [from, to) ranges, one per top-level declaration. a declaration ends at a ';' or (for
+  // declarations that end in a block) a '}' that brings paren/brace nesting back to zero, doesn't close a
+  // lambda's body and isn't followed by an 'else'. returns false if the last range is an unterminated leftover.
+  private static boolean split(List<Token> tokens, List<int[]> ranges) {
+    int start = 0;
+    int depth = 0;
+    // where the open '('s are, and whether each open '{' starts a lambda's body, e.g. in `if (a) f = fun() {};`.
+    List<Integer> parens = new ArrayList<>();
+    List<Boolean> braces = new ArrayList<>();
+    int closedParen = -1;
+
+    for (int i = 0; i < tokens.size(); i++) {
+      boolean closesLambda = false;
+      switch (tokens.get(i).type) {
+        case LEFT_PAREN:
+          parens.add(i);
+          depth++;
+          break;
+        case LEFT_BRACE:
+          braces.add(i > 0 && tokens.get(i - 1).type == RIGHT_PAREN && closedParen > 0 &&
+                     tokens.get(closedParen - 1).type == FUN);
+          depth++;
+          break;
+        case RIGHT_PAREN:
+          if (!parens.isEmpty()) closedParen = parens.remove(parens.size() - 1);
+          if (depth > 0) depth--;
+          break;
+        case RIGHT_BRACE:
+          if (!braces.isEmpty()) closesLambda = braces.remove(braces.size() - 1);
+          if (depth > 0) depth--;
+          break;
+        default:
+          break;
+      }
+
+      if (depth == 0 && !closesLambda && endsDeclaration(tokens, start, i)) {
+        ranges.add(new int[] { start, i + 1 });
+        start = i + 1;
+      }
+    }
+
+    if (start == tokens.size()) return true;
+    ranges.add(new int[] { start, tokens.size() });
+    return false;
+  }
+
+  private static boolean endsDeclaration(List<Token> tokens, int start, int i) {
+    TokenType type = tokens.get(i).type;
+    if (i + 1 < tokens.size() && tokens.get(i + 1).type == ELSE) return false;
+    if (type == SEMICOLON) return true;
+    if (type != RIGHT_BRACE) return false;
+
+    switch (tokens.get(start).type) {
+      case CLASS:
+      case LEFT_BRACE:
+      case FOR:
+      case IF:
+      case WHILE:
+        return true;
+      case FUN:
+        // `fun name() {}` is a declaration, `fun () {}` starts a lambda expression statement.
+        return start + 1 < tokens.size() && tokens.get(start + 1).type == IDENTIFIER;
+      default:
+        return false;
+    }
+  }
+}
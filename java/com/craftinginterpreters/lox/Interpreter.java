@@ -1,5 +1,6 @@
 package com.craftinginterpreters.lox;
 
+import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -7,13 +8,52 @@ import java.util.Map;
 
 class Interpreter implements Expr.Visitor<Object>,
                              Stmt.Visitor<Void> {
-  final Map<String, Object> globals = new HashMap<>();
+  // -Dlox.dispatch=pattern replaces accept()/visitor double dispatch with an instanceof chain (here and in the
+  // Resolver), which the JIT can turn into class checks without going through the Visitor interface. it's a
+  // static final so the unused path folds away.
+  static final boolean PATTERN_DISPATCH = "pattern".equals(System.getProperty("lox.dispatch"));
+
+  // program state: the resolutions of the code this runs. never written while running, so it can be shared by
+  // any number of interpreters running the same program on different threads (see LoxEngine and Script).
+  private final Map<Expr, ResolvedVarInfo> locals;
+
+  // execution state, owned by this interpreter and only ever touched by the thread running it. frozen state
+  // shared with other interpreters (see Checkpoint) is only reached through an environment or instance, and
+  // written through the overlay, which is null until this interpreter runs on top of a checkpoint.
+  final Map<String, Object> globals;
   private Environment environment;
-  private final Map<Expr, ResolvedVarInfo> locals = new HashMap<>();
+  private Overlay overlay;
+
+  // counts calls when set (jlox --pgo).
+  Profile profile = null;
+  // times calls when set (jlox --profile).
+  CallProfiler callProfiler = null;
+  // keeps the Lox call stack for sampling when set (jlox --sample).
+  SamplingProfiler sampler = null;
+  // counts allocations when set (jlox --allocations).
+  AllocationProfiler allocations = null;
+  // the script's file, for JFR events (see LoxEvents). null when it isn't from a file.
+  String scriptName = null;
+  // live counters (see LoxMetrics), if they were on when this was constructed. environments and instances are
+  // counted where the interpreter allocates them, through this field, so that's a plain null check when metrics
+  // are off (LoxMetrics.current() is a volatile read).
+  final LoxMetrics metrics = LoxMetrics.current();
+  // Lox calls in progress. only kept while metrics are on.
+  int callDepth = 0;
+  // tracks scope nesting when set (jlox --stats).
+  RunStats stats = null;
+  private final ErrorReporter reporter;
+  private final PrintWriter out;
 
   private static class LoopBreak extends RuntimeException {}
 
   Interpreter() {
+    this(new HashMap<>(), Lox.reporter, new PrintWriter(System.out, true));
+  }
+
+  Interpreter(Map<Expr, ResolvedVarInfo> locals, ErrorReporter reporter, PrintWriter out) {
+    this(locals, new HashMap<>(), null, reporter, out);
+
     globals.put("clock", new LoxCallable() {
       @Override
       public int arity() { return 0; }
@@ -27,6 +67,31 @@ class Interpreter implements Expr.Visitor<Object>,
       @Override
       public String toString() { return "<native fn>"; }
     });
+    BenchNatives.define(globals);
+  }
+
+  // see Checkpoint.fork.
+  Interpreter(Map<Expr, ResolvedVarInfo> locals, Map<String, Object> globals, Overlay overlay,
+              ErrorReporter reporter, PrintWriter out) {
+    this.locals = locals;
+    this.globals = globals;
+    this.overlay = overlay;
+    this.reporter = reporter;
+    this.out = out;
+  }
+
+  // freezes everything this interpreter has run so far into a Checkpoint, between top-level statements. this
+  // interpreter can carry on afterwards, copying frozen state on write like a fork would, and be checkpointed
+  // again. so can a fork, which layers the new checkpoint on the one it was forked from. `diagnostics` are
+  // whatever went wrong getting here.
+  //
+  // note: the checkpoint shares the resolutions, so this interpreter can't resolve more code into them (the
+  // REPL, lazy function bodies).
+  Checkpoint checkpoint(List<Diagnostic> diagnostics) {
+    if (environment != null) throw new IllegalStateException("Can't checkpoint a running interpreter.");
+    Overlay frozen = overlay;
+    overlay = new Overlay(frozen);
+    return new Checkpoint(new HashMap<>(globals), locals, frozen, diagnostics);
   }
 
   void interpret(List<Stmt> statements) {
@@ -35,7 +100,9 @@ class Interpreter implements Expr.Visitor<Object>,
         execute(statement);
       }
     } catch (RuntimeError error) {
-      Lox.runtimeError(error);
+      LoxEvents.runtimeError(error, scriptName);
+      if (metrics != null) metrics.runtimeErrors.increment();
+      reporter.runtimeError(error);
     }
   }
 
@@ -44,17 +111,69 @@ class Interpreter implements Expr.Visitor<Object>,
       Object value = evaluate(expression);
       return stringify(value);
     } catch (RuntimeError error) {
-      Lox.runtimeError(error);
+      LoxEvents.runtimeError(error, scriptName);
+      if (metrics != null) metrics.runtimeErrors.increment();
+      reporter.runtimeError(error);
       return null;
     }
   }
 
   private Object evaluate(Expr expr) {
+    if (PATTERN_DISPATCH) return dispatch(expr);
     return expr.accept(this);
   }
 
   private void execute(Stmt stmt) {
-    stmt.accept(this);
+    if (metrics != null) metrics.statements.increment();
+    if (PATTERN_DISPATCH) {
+      dispatch(stmt);
+    } else {
+      stmt.accept(this);
+    }
+  }
+
+  // most frequent node types first.
+  private Object dispatch(Expr expr) {
+    if (expr instanceof Expr.Variable variable) return visitVariableExpr(variable);
+    if (expr instanceof Expr.Literal literal) return visitLiteralExpr(literal);
+    if (expr instanceof Expr.Binary binary) return visitBinaryExpr(binary);
+    if (expr instanceof Expr.Call call) return visitCallExpr(call);
+    if (expr instanceof Expr.Assign assign) return visitAssignExpr(assign);
+    if (expr instanceof Expr.Get get) return visitGetExpr(get);
+    if (expr instanceof Expr.Logical logical) return visitLogicalExpr(logical);
+    if (expr instanceof Expr.Grouping grouping) return visitGroupingExpr(grouping);
+    if (expr instanceof Expr.This thisExpr) return visitThisExpr(thisExpr);
+    if (expr instanceof Expr.Unary unary) return visitUnaryExpr(unary);
+    if (expr instanceof Expr.Set set) return visitSetExpr(set);
+    if (expr instanceof Expr.Conditional conditional) return visitConditionalExpr(conditional);
+    if (expr instanceof Expr.Function function) return visitFunctionExpr(function);
+    throw new RuntimeException("Internal error: unhandled expression " + expr.getClass());
+  }
+
+  private void dispatch(Stmt stmt) {
+    if (stmt instanceof Stmt.Expression expression) {
+      visitExpressionStmt(expression);
+    } else if (stmt instanceof Stmt.If ifStmt) {
+      visitIfStmt(ifStmt);
+    } else if (stmt instanceof Stmt.Return returnStmt) {
+      visitReturnStmt(returnStmt);
+    } else if (stmt instanceof Stmt.Var var) {
+      visitVarStmt(var);
+    } else if (stmt instanceof Stmt.Block block) {
+      visitBlockStmt(block);
+    } else if (stmt instanceof Stmt.While whileStmt) {
+      visitWhileStmt(whileStmt);
+    } else if (stmt instanceof Stmt.Print print) {
+      visitPrintStmt(print);
+    } else if (stmt instanceof Stmt.Function function) {
+      visitFunctionStmt(function);
+    } else if (stmt instanceof Stmt.Class classStmt) {
+      visitClassStmt(classStmt);
+    } else if (stmt instanceof Stmt.Break breakStmt) {
+      visitBreakStmt(breakStmt);
+    } else {
+      throw new RuntimeException("Internal error: unhandled statement " + stmt.getClass());
+    }
   }
 
   void resolve(Expr expr, ResolvedVarInfo resolvedVar) {
@@ -62,8 +181,23 @@ class Interpreter implements Expr.Visitor<Object>,
     return;
   }
 
+  // null for globals.
+  ResolvedVarInfo resolution(Expr expr) {
+    return locals.get(expr);
+  }
+
+  Map<Expr, ResolvedVarInfo> locals() {
+    return locals;
+  }
+
+  // where this interpreter's errors go, e.g. compile errors in a lazy body (see LazyFunctionBody).
+  ErrorReporter reporter() {
+    return reporter;
+  }
+
   void executeBlock(List<Stmt> statements, Environment environment) {
     Environment previous = this.environment;
+    if (stats != null) stats.enterScope();
     try {
       this.environment = environment;
 
@@ -72,6 +206,7 @@ class Interpreter implements Expr.Visitor<Object>,
       }
     } finally {
       this.environment = previous;
+      if (stats != null) stats.exitScope();
     }
   }
 
@@ -94,6 +229,7 @@ class Interpreter implements Expr.Visitor<Object>,
         return !isTruthy(right);
       case MINUS:
         checkNumberOperand(expr.operator, right);
+        if (allocations != null) allocations.unary(expr.operator);
         return -(double) right;
     }
 
@@ -113,7 +249,7 @@ class Interpreter implements Expr.Visitor<Object>,
   private Object lookUpVariable(Token name, Expr expr) {
     ResolvedVarInfo info = locals.get(expr);
     if (info != null) {
-      return environment.getAt(info.distance(), info.slot());
+      return environment.getAt(info.distance(), info.slot(), overlay);
     } else {
       if (globals.containsKey(name.lexeme)) {
         return globals.get(name.lexeme);
@@ -128,6 +264,7 @@ class Interpreter implements Expr.Visitor<Object>,
   public Object visitBinaryExpr(Expr.Binary expr) {
     Object left = evaluate(expr.left);
     Object right = evaluate(expr.right);
+    if (allocations != null) allocations.binary(expr.operator, left, right);
 
     switch (expr.operator.type) {
       case GREATER:
@@ -195,7 +332,20 @@ class Interpreter implements Expr.Visitor<Object>,
           function.arity() + " arguments but got " +
           arguments.size() + ".");
     }
-    return function.call(this, arguments);
+    if (profile != null) profile.call(function);
+    // note: metrics are counted whatever else is watching the call.
+    if (metrics != null) metrics.enter(this);
+    try {
+      if (callProfiler != null) return callProfiler.call(this, function, arguments);
+      if (sampler != null) return sampler.call(this, function, arguments);
+      if (allocations != null) return allocations.call(this, expr.paren, function, arguments);
+      if (LoxEvents.callsEnabled()) return LoxEvents.call(this, expr.paren, function, arguments);
+      return function.call(this, arguments);
+    } catch (NativeError error) {
+      throw new RuntimeError(expr.paren, error.getMessage());
+    } finally {
+      if (metrics != null) metrics.exit(this);
+    }
   }
 
   @Override
@@ -211,7 +361,7 @@ class Interpreter implements Expr.Visitor<Object>,
 
     ResolvedVarInfo info = locals.get(expr);
     if (info != null) {
-      environment.assignAt(info.distance(), info.slot(), value);
+      environment.assignAt(info.distance(), info.slot(), value, overlay);
     } else {
       if (globals.containsKey(expr.name.lexeme)) {
         globals.put(expr.name.lexeme, value);
@@ -246,7 +396,7 @@ class Interpreter implements Expr.Visitor<Object>,
     }
 
     Object value = evaluate(expr.value);
-    ((LoxInstance)object).set(expr.name, value);
+    ((LoxInstance)object).set(expr.name, value, overlay);
     return value;
   }
 
@@ -257,6 +407,8 @@ class Interpreter implements Expr.Visitor<Object>,
 
   @Override
   public Void visitBlockStmt(Stmt.Block stmt) {
+    if (allocations != null) allocations.block(stmt);
+    if (metrics != null) metrics.environments.increment();
     executeBlock(stmt.statements, new Environment(environment));
     return null;
   }
@@ -266,11 +418,13 @@ class Interpreter implements Expr.Visitor<Object>,
     withForwardDeclare(stmt.name, () -> {
       Map<String, LoxFunction> methods = new HashMap<>();
       for (Stmt.Function method : stmt.methods) {
+        if (allocations != null) allocations.record(AllocationProfiler.Kind.CLOSURE, method.name.line);
         LoxFunction function = new LoxFunction(method.name.lexeme, method.function, environment,
                                                method.name.lexeme.equals("init"));
         methods.put(method.name.lexeme, function);
       }
 
+      if (allocations != null) allocations.record(AllocationProfiler.Kind.CLASS, stmt.name.line);
       return new LoxClass(stmt.name.lexeme, methods);
     });
     return null;
@@ -284,6 +438,7 @@ class Interpreter implements Expr.Visitor<Object>,
 
   @Override
   public Void visitFunctionStmt(Stmt.Function stmt) {
+    if (allocations != null) allocations.record(AllocationProfiler.Kind.CLOSURE, stmt.name.line);
     LoxFunction function = new LoxFunction(stmt.name.lexeme, stmt.function, environment, false);
     define(stmt.name, function);
     return null;
@@ -291,6 +446,7 @@ class Interpreter implements Expr.Visitor<Object>,
 
   @Override
   public Object visitFunctionExpr(Expr.Function expr) {
+    if (allocations != null) allocations.record(AllocationProfiler.Kind.CLOSURE, expr.start.line);
     return new LoxFunction(null, expr, environment, false);
   }
 
@@ -298,7 +454,10 @@ class Interpreter implements Expr.Visitor<Object>,
   public Object visitGetExpr(Expr.Get expr) {
     Object object = evaluate(expr.object);
     if (object instanceof LoxInstance) {
-      return ((LoxInstance) object).get(expr.name);
+      if (allocations != null) allocations.get(expr.name, (LoxInstance)object, overlay);
+      // a bound method's environment.
+      if (metrics != null && ((LoxInstance)object).binds(expr.name, overlay)) metrics.environments.increment();
+      return ((LoxInstance) object).get(expr.name, overlay);
     }
 
     throw new RuntimeError(expr.name, "Only instances have properties.");
@@ -317,7 +476,7 @@ class Interpreter implements Expr.Visitor<Object>,
   @Override
   public Void visitPrintStmt(Stmt.Print stmt) {
     Object value = evaluate(stmt.expression);
-    System.out.println(stringify(value));
+    out.println(stringify(value));
     return null;
   }
 
@@ -356,14 +515,14 @@ class Interpreter implements Expr.Visitor<Object>,
     return null;
   }
 
-  private boolean isTruthy(Object object) {
+  static boolean isTruthy(Object object) {
     if (object == null) return false;
     if (object instanceof Boolean)
       return (boolean) object;
     return true;
   }
 
-  private boolean isEqual(Object a, Object b) {
+  static boolean isEqual(Object a, Object b) {
     if (a == null && b == null) return true;
     if (a == null) return false;
 
@@ -382,7 +541,7 @@ class Interpreter implements Expr.Visitor<Object>,
     throw new RuntimeError(operator, "Operands must be numbers.");
   }
 
-  private String stringify(Object object) {
+  static String stringify(Object object) {
     if (object == null)
       return "nil";
 
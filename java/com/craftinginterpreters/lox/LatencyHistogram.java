@@ -0,0 +1,58 @@
+package com.craftinginterpreters.lox;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// lock-free histogram of durations in nanoseconds, for per-job latency metrics. values are bucketed by their
+// power of two and 16 linear steps within it, so a reported percentile is at most ~6% below the true value.
+final class LatencyHistogram {
+  private static final int SUB_BITS = 4;
+  private static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+  private final AtomicLongArray counts = new AtomicLongArray(64 << SUB_BITS);
+  private final AtomicLong count = new AtomicLong();
+  private final AtomicLong max = new AtomicLong();
+
+  void record(long nanos) {
+    if (nanos < 0) nanos = 0;
+    counts.incrementAndGet(index(nanos));
+    count.incrementAndGet();
+    max.accumulateAndGet(nanos, Math::max);
+  }
+
+  long count() {
+    return count.get();
+  }
+
+  long max() {
+    return max.get();
+  }
+
+  // lower bound of the bucket holding the q-th quantile (0 < q <= 1), or 0 if nothing was recorded.
+  long percentile(double q) {
+    long total = count.get();
+    if (total == 0) return 0;
+
+    long target = Math.max(1, (long)Math.ceil(q * total));
+    long seen = 0;
+    for (int i = 0; i < counts.length(); i++) {
+      seen += counts.get(i);
+      if (seen >= target) return lowerBound(i);
+    }
+    return max.get(); // records raced with the scan.
+  }
+
+  private static int index(long value) {
+    if (value < SUB_BUCKETS) return (int)value;
+    int exponent = 63 - Long.numberOfLeadingZeros(value);
+    int sub = (int)(value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+    return ((exponent - SUB_BITS + 1) << SUB_BITS) + sub;
+  }
+
+  private static long lowerBound(int index) {
+    if (index < SUB_BUCKETS) return index;
+    int exponent = (index >> SUB_BITS) + SUB_BITS - 1;
+    long sub = index & (SUB_BUCKETS - 1);
+    return (1L << exponent) + (sub << (exponent - SUB_BITS));
+  }
+}
@@ -0,0 +1,76 @@
+package com.craftinginterpreters.lox;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// the body of a top-level function or method that the Parser skipped over in lazy mode (jlox --lazy). only its
+// braces and parentheses were matched up front. the tokens are kept around and the body is parsed and resolved
+// the first time the function is called, then cached in the owning Expr.Function's (initially empty) body list.
+//
+// note: this only ever happens at the top level, where the enclosing scope is either global or (for methods) the
+// scope binding 'this'. that's what makes it possible to resolve the body later without the Resolver's state at
+// the point of declaration. the price is that errors inside the body only surface when it's first called.
+class LazyFunctionBody {
+  private final Token brace;
+  private final List<Token> tokens;
+  private final boolean isMethod;
+  private final boolean isInitializer;
+
+  private volatile boolean compiled = false;
+
+  LazyFunctionBody(Token brace, List<Token> tokens, boolean isMethod, boolean isInitializer) {
+    this.brace = brace;
+    this.tokens = tokens;
+    this.isMethod = isMethod;
+    this.isInitializer = isInitializer;
+  }
+
+  boolean isCompiled() {
+    return compiled;
+  }
+
+  // errors go to `reporter`. whether this body had any is decided by this compile alone, not by whatever else was
+  // reported before (the command line's Lox.hadError, say).
+  synchronized void compile(Expr.Function function, Interpreter interpreter, ErrorReporter reporter) {
+    if (compiled) return;
+
+    List<Token> bodyTokens = new ArrayList<>(tokens);
+    Token last = tokens.get(tokens.size() - 1);
+    bodyTokens.add(new Token(TokenType.EOF, "", null, last.line));
+
+    Errors errors = new Errors(reporter);
+    List<Stmt> body = new Parser(bodyTokens, false, errors).parseFunctionBody();
+    if (!errors.found) {
+      function.body.addAll(body);
+      new Resolver(interpreter, errors).resolveLazyFunction(function, isMethod, isInitializer);
+    }
+
+    if (errors.found) {
+      function.body.clear();
+      throw new RuntimeError(brace, "Function body has errors.");
+    }
+
+    compiled = true;
+  }
+
+  // passes compile errors on, and remembers there were some.
+  private static final class Errors implements ErrorReporter {
+    private final ErrorReporter reporter;
+    boolean found = false;
+
+    Errors(ErrorReporter reporter) {
+      this.reporter = reporter;
+    }
+
+    @Override
+    public void report(int line, String where, String message) {
+      found = true;
+      reporter.report(line, where, message);
+    }
+
+    @Override
+    public void runtimeError(RuntimeError error) {
+      reporter.runtimeError(error);
+    }
+  }
+}
@@ -3,30 +3,296 @@ package com.craftinginterpreters.lox;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.io.Reader;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.WeakHashMap;
 
 public class Lox {
-  private static final Interpreter interpreter = new Interpreter();
   static boolean hadError = false;
   static boolean hadRuntimeError = false;
 
+  // reports to stderr and sets the flags above.
+  static final ErrorReporter reporter = new ErrorReporter() {
+    @Override
+    public void report(int line, String where, String message) {
+      System.err.println("[line " + line + "] Error" + where + ": " + message);
+      hadError = true;
+    }
+
+    @Override
+    public void runtimeError(RuntimeError error) {
+      System.err.println(error.getMessage() + "\n[line " + error.token.line + "]");
+      hadRuntimeError = true;
+    }
+  };
+
+  // note: after `reporter`, which the Interpreter picks up when it's constructed.
+  private static final Interpreter interpreter = new Interpreter();
+
+  private static boolean lazyFunctions = false;
+  private static boolean check = false;
+  private static boolean flat = false;
+  private static ScriptCache cache = null;
+  private static boolean serve = false;
+  private static boolean daemon = false;
+  private static boolean batch = false;
+  private static boolean pgo = false;
+  private static boolean stream = false;
+  private static boolean callProfile = false;
+  private static int sampleRate = 0;
+  private static Path samplePath = null;
+  private static int allocationSites = 0;
+  private static Path profilePath = null;
+  private static RunStats stats = null;
+  private static boolean statsJson = false;
+  private static int concurrency = Runtime.getRuntime().availableProcessors();
+  private static int queueCapacity = 1024;
+
+  static final String USAGE = "Usage: jlox [--lazy] [script] | jlox [--flat] [--cache] script | " +
+                             "jlox [--lazy [--pgo]] [--profile | --sample[=HZ] | --allocations[=N]] " +
+                             "[--stats[=json]] script | " +
+                             "jlox [--lazy] --stream [script] | jlox --check | " +
+                             "jlox --serve [--concurrency=N] [--queue=N] [socket] | jlox --daemon socket | " +
+                             "jlox --batch [--concurrency=N] dir|script...";
+
+  // the ways jlox runs: a script (or the REPL, without one) unless another mode's flag is given. for each, the
+  // options it takes and how many arguments it needs. see conflict().
+  private enum Mode {
+    RUN(null, "script", 0, 1,
+        "--lazy", "--pgo", "--flat", "--cache", "--profile", "--sample", "--allocations", "--stats"),
+    CHECK("--check", "script", 0, 0),
+    STREAM("--stream", "script", 0, 1, "--lazy"),
+    SERVE("--serve", "socket", 0, 1, "--concurrency", "--queue"),
+    DAEMON("--daemon", "socket", 1, 1),
+    BATCH("--batch", "dir or script", 1, Integer.MAX_VALUE, "--concurrency");
+
+    final String flag;
+    final String argument;
+    final int minArguments;
+    final int maxArguments;
+    final List<String> options;
+
+    Mode(String flag, String argument, int minArguments, int maxArguments, String... options) {
+      this.flag = flag;
+      this.argument = argument;
+      this.minArguments = minArguments;
+      this.maxArguments = maxArguments;
+      this.options = List.of(options);
+    }
+  }
+
+  // options that only make sense for a script, not the REPL.
+  private static final List<String> NEED_SCRIPT =
+      List.of("--flat", "--cache", "--pgo", "--profile", "--sample", "--allocations", "--stats");
+  // the first option of each row can't be used with any of the others. --flat and --cache don't run the
+  // tree-walker's lazy bodies or call hooks, and the profilers each hook the same calls.
+  private static final String[][] CONFLICTS = {
+      {"--flat", "--pgo", "--profile", "--sample", "--allocations"},
+      {"--cache", "--pgo", "--profile", "--sample", "--allocations"},
+      {"--profile", "--sample", "--allocations"},
+      {"--sample", "--allocations"},
+  };
+  // the first option of each row needs the second. --pgo only decides which bodies --lazy defers.
+  private static final String[][] REQUIRES = {
+      {"--pgo", "--lazy"},
+  };
+
   public static void main(String[] args) throws IOException {
-    if (args.length > 1) {
-      System.out.println("Usage: jlox [script]");
-      System.exit(64);
-    } else if (args.length == 1) {
-      runFile(args[0]);
+    List<String> scripts = new ArrayList<>();
+    // the options given, without their "=value".
+    Set<String> options = new LinkedHashSet<>();
+    for (String arg : args) {
+      if (arg.startsWith("--")) options.add(arg.contains("=") ? arg.substring(0, arg.indexOf('=')) : arg);
+      if (arg.equals("--lazy")) {
+        lazyFunctions = true;
+      } else if (arg.equals("--check")) {
+        check = true;
+      } else if (arg.equals("--flat")) {
+        flat = true;
+      } else if (arg.equals("--cache")) {
+        cache = new ScriptCache(ScriptCache.defaultDirectory());
+      } else if (arg.equals("--serve")) {
+        serve = true;
+      } else if (arg.equals("--daemon")) {
+        daemon = true;
+      } else if (arg.equals("--batch")) {
+        batch = true;
+      } else if (arg.equals("--pgo")) {
+        pgo = true;
+      } else if (arg.equals("--stream")) {
+        stream = true;
+      } else if (arg.equals("--profile")) {
+        callProfile = true;
+      } else if (arg.equals("--sample")) {
+        sampleRate = 100;
+      } else if (arg.startsWith("--sample=")) {
+        sampleRate = positive(arg);
+      } else if (arg.equals("--allocations")) {
+        allocationSites = 20;
+      } else if (arg.startsWith("--allocations=")) {
+        allocationSites = positive(arg);
+      } else if (arg.equals("--stats")) {
+        stats = new RunStats();
+      } else if (arg.equals("--stats=json")) {
+        stats = new RunStats();
+        statsJson = true;
+      } else if (arg.startsWith("--concurrency=")) {
+        concurrency = positive(arg);
+      } else if (arg.startsWith("--queue=")) {
+        queueCapacity = positive(arg);
+      } else if (arg.startsWith("--")) {
+        usage();
+      } else {
+        scripts.add(arg);
+      }
+    }
+
+    String conflict = conflict(options, scripts.size());
+    if (conflict != null) {
+      System.err.println(conflict);
+      usage();
+    } else if (batch) {
+      System.exit(new LoxBatch(concurrency).run(scripts, System.out));
+    } else if (check) {
+      runCheck();
+    } else if (stream) {
+      runStream(scripts.isEmpty() ? new InputStreamReader(System.in)
+                                  : Files.newBufferedReader(Paths.get(scripts.get(0)), Charset.defaultCharset()));
+    } else if (serve) {
+      runServer(scripts);
+    } else if (daemon) {
+      LoxMetrics.register();
+      new LoxDaemon().listen(Paths.get(scripts.get(0)));
+    } else if (scripts.size() == 1) {
+      // the profile lives next to the script, see Profile.
+      if (pgo) profilePath = Paths.get(scripts.get(0) + ".profile");
+      // collapsed stacks, see SamplingProfiler.
+      if (sampleRate > 0) samplePath = Paths.get(scripts.get(0) + ".folded");
+      runFile(scripts.get(0));
     } else {
       runPrompt();
     }
   }
 
+  // why the options can't be used together with this many arguments, or null if they can.
+  private static String conflict(Set<String> options, int arguments) {
+    List<Mode> modes = new ArrayList<>();
+    for (Mode mode : Mode.values()) {
+      if (options.contains(mode.flag)) modes.add(mode);
+    }
+    if (modes.size() > 1) return modes.get(0).flag + " and " + modes.get(1).flag + " can't be used together.";
+    Mode mode = modes.isEmpty() ? Mode.RUN : modes.get(0);
+
+    for (String option : options) {
+      if (option.equals(mode.flag) || mode.options.contains(option)) continue;
+      if (mode != Mode.RUN) return mode.flag + " doesn't take " + option + ".";
+
+      List<String> takers = new ArrayList<>();
+      for (Mode other : Mode.values()) {
+        if (other.options.contains(option)) takers.add(other.flag);
+      }
+      return option + " needs " + String.join(" or ", takers) + ".";
+    }
+    for (String[] row : CONFLICTS) {
+      for (int i = 1; i < row.length; i++) {
+        if (options.contains(row[0]) && options.contains(row[i])) {
+          return row[0] + " and " + row[i] + " can't be used together.";
+        }
+      }
+    }
+    for (String[] row : REQUIRES) {
+      if (options.contains(row[0]) && !options.contains(row[1])) return row[0] + " needs " + row[1] + ".";
+    }
+
+    String name = mode == Mode.RUN ? "jlox" : mode.flag;
+    if (arguments > mode.maxArguments) {
+      return mode.maxArguments == 0 ? name + " takes no " + mode.argument + "."
+                                    : name + " takes one " + mode.argument + " at most.";
+    }
+    if (arguments < mode.minArguments) return name + " needs a " + mode.argument + ".";
+    if (arguments == 0 && mode == Mode.RUN) {
+      for (String option : options) {
+        if (NEED_SCRIPT.contains(option)) return option + " needs a script.";
+      }
+    }
+    return null;
+  }
+
+  private static void usage() {
+    System.out.println(USAGE);
+    System.exit(64);
+  }
+
+  // the N in --flag=N.
+  private static int positive(String arg) {
+    try {
+      int value = Integer.parseInt(arg.substring(arg.indexOf('=') + 1));
+      if (value > 0) return value;
+    } catch (NumberFormatException e) {
+    }
+    usage();
+    return 0;
+  }
+
+  // job server, see LoxServer. serves stdin/stdout, or clients of the given Unix domain socket.
+  private static void runServer(List<String> scripts) throws IOException {
+    LoxMetrics.register();
+    LoxServer server = new LoxServer(concurrency, queueCapacity);
+    if (scripts.isEmpty()) {
+      server.serve(System.in, System.out);
+    } else {
+      server.listen(Paths.get(scripts.get(0)));
+    }
+  }
+
   private static void runFile(String path) throws IOException {
     byte[] bytes = Files.readAllBytes(Paths.get(path));
+    interpreter.scriptName = path;
+    interpreter.stats = stats;
     run(new String(bytes, Charset.defaultCharset()));
+    // note: stderr, after any diagnostics, so the script's own output stays as it was.
+    if (stats != null) stats.print(System.err, statsJson);
+    if (hadError)
+      System.exit(65);
+    System.exit(70);
+  }
+
+  // --stream: scans, parses, resolves and runs the script one top-level declaration at a time, reading it as it
+  // goes, so only the declaration being run is in memory. resolutions are held weakly, and go away with the code
+  // they're for once nothing (like a function) refers to it anymore.
+  //
+  // diagnostics and exit codes are the same as for runFile, but everything before the first error has already
+  // run by the time it's found. after an error, the rest is only checked, to report any other errors.
+  private static void runStream(Reader reader) {
+    Interpreter interpreter = new Interpreter(new WeakHashMap<>(), reporter, new PrintWriter(System.out, true));
+    TokenStream tokens = new TokenStream(reader, reporter);
+    Parser parser = new Parser(tokens, lazyFunctions);
+    Resolver resolver = new Resolver(interpreter);
+
+    boolean syntaxError = false;
+    while (!parser.atEnd()) {
+      boolean hadErrorBefore = hadError;
+      Stmt statement = parser.parseDeclaration();
+      tokens.discardBefore(parser.position() - 1);
+      // note: like runFile, resolution errors are only reported while there are no syntax errors. a declaration
+      // can parse with an error inside it (in a function's body, say), so any error reported while parsing it
+      // counts, not only a null statement.
+      syntaxError |= statement == null || hadError != hadErrorBefore;
+      if (syntaxError) continue;
+
+      List<Stmt> statements = List.of(statement);
+      resolver.resolve(statements);
+      if (!hadError && !hadRuntimeError) interpreter.interpret(statements);
+    }
+
     if (hadError)
       System.exit(65);
     System.exit(70);
@@ -43,30 +309,86 @@ public class Lox {
     }
   }
 
+  // editor integration: reads buffers separated by NUL characters from stdin and re-analyses each one
+  // incrementally, without running it. diagnostics go to stderr as usual, plus one status line per buffer
+  // on stdout.
+  private static void runCheck() throws IOException {
+    IncrementalFrontEnd frontEnd = new IncrementalFrontEnd(reporter);
+    Reader reader = new BufferedReader(new InputStreamReader(System.in));
+    StringBuilder buffer = new StringBuilder();
+
+    int c;
+    while ((c = reader.read()) != -1) {
+      if (c != 0) {
+        buffer.append((char)c);
+        continue;
+      }
+
+      check(frontEnd, buffer.toString());
+      buffer.setLength(0);
+    }
+
+    if (buffer.length() > 0) check(frontEnd, buffer.toString());
+  }
+
+  private static void check(IncrementalFrontEnd frontEnd, String source) {
+    long start = System.nanoTime();
+    frontEnd.update(source);
+    double millis = (System.nanoTime() - start) / 1e6;
+
+    System.err.flush();
+    System.out.printf("%s (reparsed %d of %d declarations in %.2f ms)%n", frontEnd.hadError() ? "error" : "ok",
+                      frontEnd.reparsed(), frontEnd.analyzed(), millis);
+  }
+
   private static void run(String source) {
     runSource(source, false);
   }
 
   private static void runSource(String source, boolean isRepl) {
+    if (cache != null && !isRepl) {
+      List<Stmt> statements = cache.load(source, interpreter);
+      if (statements != null) {
+        if (stats != null) stats.program(statements);
+        execute(statements);
+        return;
+      }
+    }
+
+    PhaseTimer scan = PhaseTimer.begin(PhaseTimer.Phase.SCAN, interpreter.scriptName, stats);
     Scanner scanner = new Scanner(source);
     List<Token> tokens = scanner.scanTokens();
-    Parser parser = new Parser(tokens);
+    scan.end();
+    if (stats != null) stats.tokens(tokens);
+
+    PhaseTimer parse = PhaseTimer.begin(PhaseTimer.Phase.PARSE, interpreter.scriptName, stats);
+    // the flat encoding (also used by the cache) needs every body up front.
+    Parser parser = new Parser(tokens, lazyFunctions && !flat && cache == null);
 
     Object syntax = isRepl ? parser.parseRepl() : parser.parse();
+    parse.end();
 
     // Stop if there was a syntax error.
     if (hadError) return;
 
     if (syntax instanceof List) {
       List<Stmt> statements = (List<Stmt>) syntax;
+      if (stats != null) stats.program(statements);
 
+      PhaseTimer resolve = PhaseTimer.begin(PhaseTimer.Phase.RESOLVE, interpreter.scriptName, stats);
       Resolver resolver = new Resolver(interpreter);
       resolver.resolve(statements);
+      resolve.end();
 
       // Stop if there was a resolution error.
       if (hadError) return;
 
-      interpreter.interpret(statements);
+      if (cache != null) cache.store(source, statements, interpreter);
+      if (profilePath != null && !isRepl) {
+        executeProfiled(source, tokens, statements);
+      } else {
+        execute(statements);
+      }
     } else if (syntax instanceof Expr) {
       // This only happens in REPL mode for single expressions
       // Resolution is a no-op for expressions in REPL, since it's all in global scope.
@@ -77,25 +399,52 @@ public class Lox {
     }
   }
 
-  static void runtimeError(RuntimeError error) {
-    System.err.println(error.getMessage() + "\n[line " + error.token.line + "]");
-    hadRuntimeError = true;
+  private static void execute(List<Stmt> statements) {
+    PhaseTimer execute = PhaseTimer.begin(PhaseTimer.Phase.EXECUTE, interpreter.scriptName, stats);
+    if (flat) {
+      new FlatInterpreter(FlatAst.encode(statements, interpreter), interpreter).interpret();
+    } else if (callProfile) {
+      // the report goes to stderr, after any runtime error, so the script's own output stays as it was.
+      interpreter.callProfiler = new CallProfiler();
+      interpreter.interpret(statements);
+      interpreter.callProfiler.report(System.err);
+      interpreter.callProfiler = null;
+    } else if (allocationSites > 0) {
+      interpreter.allocations = new AllocationProfiler(allocationSites);
+      interpreter.interpret(statements);
+      interpreter.allocations.report(interpreter, System.err);
+      interpreter.allocations = null;
+    } else if (samplePath != null) {
+      SamplingProfiler sampler = new SamplingProfiler(sampleRate);
+      interpreter.sampler = sampler;
+      sampler.start();
+      interpreter.interpret(statements);
+      sampler.stop();
+      interpreter.sampler = null;
+      try {
+        sampler.write(interpreter, samplePath);
+      } catch (IOException e) {
+        System.err.println("Can't write " + samplePath + ": " + e.getMessage());
+      }
+    } else {
+      interpreter.interpret(statements);
+    }
+    execute.end();
   }
 
-  static void error(int line, String message) {
-    report(line, "", message);
-  }
+  // runs with the profile earlier runs left applied, then stores it with this run added.
+  private static void executeProfiled(String source, List<Token> tokens, List<Stmt> statements) {
+    Profile profile = new Profile(source, tokens, statements);
+    profile.load(profilePath);
+    profile.apply(interpreter);
 
-  private static void report(int line, String where, String message) {
-    System.err.println("[line " + line + "] Error" + where + ": " + message);
-    hadError = true;
+    interpreter.profile = profile;
+    execute(statements);
+    interpreter.profile = null;
+    profile.store(profilePath);
   }
 
-  static void error(Token token, String message) {
-    if (token.type == TokenType.EOF) {
-      report(token.line, " at end", message);
-    } else {
-      report(token.line, " at '" + token.lexeme + "'", message);
-    }
+  static void runtimeError(RuntimeError error) {
+    reporter.runtimeError(error);
   }
 }
\ No newline at end of file
@@ -0,0 +1,153 @@
+package com.craftinginterpreters.lox;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringWriter;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// runs a whole corpus of scripts in one JVM (jlox --batch dir|files...), `concurrency` at a time. every script
+// runs in its own Interpreter with stdout and stderr captured together, like test/test_runner.sh's `2>&1`. when
+// a script has an expected/<name>_expected.txt next to it, the output is compared against it, so on test/ this
+// reports the same passes and failures as the bash runner, in one JVM instead of one per script.
+class LoxBatch {
+  private final LoxEngine engine = new LoxEngine();
+  private final int concurrency;
+
+  private static final class Result {
+    final Path script;
+    final String output;
+    final Path expected; // null if there's nothing to compare against.
+    final long nanos;
+
+    Result(Path script, String output, Path expected, long nanos) {
+      this.script = script;
+      this.output = output;
+      this.expected = expected;
+      this.nanos = nanos;
+    }
+  }
+
+  LoxBatch(int concurrency) {
+    this.concurrency = concurrency;
+  }
+
+  // prints a report like test/test_runner.sh's to `out` and returns its exit code: 0 if every compared script
+  // passed, 1 otherwise.
+  int run(List<String> paths, PrintStream out) throws IOException {
+    List<Path> scripts = new ArrayList<>();
+    for (String path : paths) {
+      File file = new File(path);
+      if (file.isDirectory()) {
+        File[] files = file.listFiles((dir, name) -> name.endsWith(".lox"));
+        if (files == null) throw new IOException("Can't list " + path);
+        Arrays.sort(files);
+        for (File script : files) scripts.add(script.toPath());
+      } else {
+        scripts.add(file.toPath());
+      }
+    }
+
+    long started = System.nanoTime();
+    ExecutorService executor = Executors.newFixedThreadPool(concurrency, runnable -> {
+      Thread thread = new Thread(runnable, "lox-batch");
+      thread.setDaemon(true);
+      return thread;
+    });
+    List<Future<Result>> futures = new ArrayList<>();
+    for (Path script : scripts) {
+      futures.add(executor.submit(() -> run(script)));
+    }
+
+    // reported in input order. a slow script holds up the report, not the other workers.
+    int passed = 0;
+    int failed = 0;
+    for (Future<Result> future : futures) {
+      Result result;
+      try {
+        result = future.get();
+      } catch (InterruptedException | ExecutionException e) {
+        throw new IOException(e);
+      }
+
+      String name = name(result.script);
+      String time = String.format("(%.1f ms)", result.nanos / 1e6);
+      if (result.expected == null) {
+        out.println(name + ": No expected output file found " + time);
+        continue;
+      }
+
+      String expected = new String(Files.readAllBytes(result.expected), Charset.defaultCharset());
+      if (expected.equals(result.output)) {
+        out.println(name + ": PASSED " + time);
+        passed++;
+      } else {
+        out.println(name + ": FAILED - Output mismatch " + time);
+        out.println("  Expected: " + result.expected);
+        printDiff(expected, result.output, out);
+        failed++;
+      }
+    }
+    executor.shutdown();
+
+    out.println("==========================================");
+    out.println("Test Summary:");
+    out.println("Total:  " + scripts.size());
+    out.println("Passed: " + passed);
+    out.println("Failed: " + failed);
+    out.println(String.format("Time:   %.1f ms", (System.nanoTime() - started) / 1e6));
+    out.println("==========================================");
+    return failed == 0 ? 0 : 1;
+  }
+
+  private Result run(Path script) throws IOException {
+    Path expected = script.toAbsolutePath().resolveSibling(
+        Paths.get("expected", name(script) + "_expected.txt"));
+    if (!Files.isRegularFile(expected)) expected = null;
+
+    long started = System.nanoTime();
+    StringWriter output = new StringWriter();
+    try {
+      String source = new String(Files.readAllBytes(script), Charset.defaultCharset());
+      Script compiled = engine.compile(source);
+      List<Diagnostic> diagnostics = engine.run(compiled, null, output);
+      for (Diagnostic diagnostic : diagnostics) {
+        output.write(diagnostic + System.lineSeparator());
+      }
+    } catch (IOException e) {
+      output.write("Exception in thread \"main\" " + e + System.lineSeparator());
+    } catch (StackOverflowError e) {
+      output.write("Exception in thread \"main\" java.lang.StackOverflowError" + System.lineSeparator());
+    }
+    return new Result(script, output.toString(), expected, System.nanoTime() - started);
+  }
+
+  private static String name(Path script) {
+    String name = script.getFileName().toString();
+    return name.endsWith(".lox") ? name.substring(0, name.length() - 4) : name;
+  }
+
+  // note: just the differing lines, not a real diff. enough to see what went wrong.
+  private static void printDiff(String expected, String actual, PrintStream out) {
+    String[] expectedLines = expected.split("\n", -1);
+    String[] actualLines = actual.split("\n", -1);
+    for (int i = 0; i < Math.max(expectedLines.length, actualLines.length); i++) {
+      String want = i < expectedLines.length ? expectedLines[i] : null;
+      String got = i < actualLines.length ? actualLines[i] : null;
+      if (want != null && want.equals(got)) continue;
+      out.println("    line " + (i + 1) + ":");
+      if (want != null) out.println("    < " + want);
+      if (got != null) out.println("    > " + got);
+    }
+  }
+}
@@ -1,5 +1,6 @@
 package com.craftinginterpreters.lox;
 
+import java.util.Deque;
 import java.util.List;
 import java.util.Map;
 
@@ -20,6 +21,12 @@ class LoxClass implements LoxCallable {
     return null;
   }
 
+  void freeze(Deque<Object> pending) {
+    for (LoxFunction method : methods.values()) {
+      pending.push(method);
+    }
+  }
+
   @Override
   public String toString() {
     return name;
@@ -29,6 +36,11 @@ class LoxClass implements LoxCallable {
   public Object call(Interpreter interpreter, List<Object> arguments) {
     LoxInstance instance = new LoxInstance(this);
     LoxFunction initializer = findMethod("init");
+    if (interpreter.metrics != null) {
+      interpreter.metrics.instances.increment();
+      // bind() below.
+      if (initializer != null) interpreter.metrics.environments.increment();
+    }
     if (initializer != null) {
       initializer.bind(instance).call(interpreter, arguments);
     }
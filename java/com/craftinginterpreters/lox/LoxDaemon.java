@@ -0,0 +1,183 @@
+package com.craftinginterpreters.lox;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+// long-running jlox (jlox --daemon <socket>) that runs scripts for a thin client (util/jloxc.c, used by the
+// jlox launcher when $JLOX_DAEMON names the socket), so a run doesn't pay for JVM startup and JIT warmup. the
+// JIT-compiled front end and interpreter, and the LoxEngine's compiled script cache, stay around between runs.
+//
+// protocol, all frames are a header line followed by exactly <bytes> bytes:
+//   client: cwd <bytes>\n<dir>, then arg <bytes>\n<arg> per command line argument, then run\n
+//   daemon: 1 <bytes>\n<stdout data> and 2 <bytes>\n<stderr data> as the script runs, then x <exit code>\n
+// a run behaves like `jlox script` would: usage errors exit 64, a script with compile errors 65, and every other
+// run 70 (see Lox.runFile).
+class LoxDaemon {
+  private final LoxEngine engine = new LoxEngine();
+
+  // a Writer that sends everything written to it as frames of one stream.
+  private static final class Stream extends Writer {
+    private final OutputStream out;
+    private final String stream;
+    private final StringBuilder buffer = new StringBuilder();
+
+    Stream(OutputStream out, String stream) {
+      this.out = out;
+      this.stream = stream;
+    }
+
+    @Override
+    public void write(char[] chars, int offset, int length) {
+      buffer.append(chars, offset, length);
+    }
+
+    @Override
+    public void flush() throws IOException {
+      if (buffer.length() == 0) return;
+      byte[] data = buffer.toString().getBytes(StandardCharsets.UTF_8);
+      buffer.setLength(0);
+      synchronized (out) {
+        out.write((stream + " " + data.length + "\n").getBytes(StandardCharsets.UTF_8));
+        out.write(data);
+        out.flush();
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      flush();
+    }
+  }
+
+  void listen(Path socket) throws IOException {
+    Files.deleteIfExists(socket);
+    ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+    server.bind(UnixDomainSocketAddress.of(socket));
+    socket.toFile().deleteOnExit();
+
+    while (true) {
+      SocketChannel client = server.accept();
+      Thread thread = new Thread(() -> {
+        try (client) {
+          serve(Channels.newInputStream(client), Channels.newOutputStream(client));
+        } catch (IOException e) {
+          // the client went away.
+        }
+      }, "lox-daemon-client");
+      thread.setDaemon(true);
+      thread.start();
+    }
+  }
+
+  private void serve(InputStream input, OutputStream output) throws IOException {
+    InputStream in = new BufferedInputStream(input);
+    OutputStream out = new BufferedOutputStream(output);
+
+    Stream stdout = new Stream(out, "1");
+    Stream stderr = new Stream(out, "2");
+
+    Path cwd = Paths.get("");
+    List<String> args = new ArrayList<>();
+    String header;
+    while ((header = readLine(in)) != null && !header.equals("run")) {
+      String[] parts = header.split(" ");
+      int length = parts.length == 2 ? length(parts[1]) : -1;
+      if (length < 0 || !(parts[0].equals("cwd") || parts[0].equals("arg"))) {
+        // note: the rest of the request can't be framed anymore, so this is the reply.
+        new PrintWriter(stderr, true).println("jlox daemon: malformed frame header: " + header);
+        exit(out, 1);
+        return;
+      }
+      byte[] data = in.readNBytes(length);
+      String value = new String(data, StandardCharsets.UTF_8);
+
+      if (parts[0].equals("cwd")) {
+        cwd = Paths.get(value);
+      } else {
+        args.add(value);
+      }
+    }
+    if (header == null) return;
+
+    int exitCode = run(cwd, args, new PrintWriter(stdout, true), new PrintWriter(stderr, true));
+    exit(out, exitCode);
+  }
+
+  // the last frame of a reply.
+  private static void exit(OutputStream out, int exitCode) throws IOException {
+    synchronized (out) {
+      out.write(("x " + exitCode + "\n").getBytes(StandardCharsets.UTF_8));
+      out.flush();
+    }
+  }
+
+  private int run(Path cwd, List<String> args, PrintWriter stdout, PrintWriter stderr) {
+    // the daemon only runs scripts. options and the REPL need a real jlox.
+    if (args.size() != 1 || args.get(0).startsWith("--")) {
+      stdout.println(Lox.USAGE);
+      return 64;
+    }
+
+    String source;
+    try {
+      byte[] bytes = Files.readAllBytes(cwd.resolve(args.get(0)));
+      source = new String(bytes, Charset.defaultCharset());
+    } catch (IOException e) {
+      // roughly what the uncaught exception would have printed.
+      stderr.println("Exception in thread \"main\" " + e);
+      return 1;
+    }
+
+    Script script = engine.compile(source);
+    List<Diagnostic> diagnostics;
+    try {
+      diagnostics = engine.run(script, null, stdout);
+    } catch (StackOverflowError e) {
+      stderr.println("Exception in thread \"main\" java.lang.StackOverflowError");
+      return 1;
+    }
+
+    for (Diagnostic diagnostic : diagnostics) {
+      stderr.println(diagnostic);
+    }
+    return script.hasErrors() ? 65 : 70;
+  }
+
+  // a frame's <bytes>, or -1 if it isn't a length.
+  private static int length(String field) {
+    try {
+      return Integer.parseInt(field);
+    } catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+
+  // the header line, without its '\n', or null at the end of the input.
+  private static String readLine(InputStream in) throws IOException {
+    ByteArrayOutputStream line = new ByteArrayOutputStream();
+    int c;
+    while ((c = in.read()) != -1 && c != '\n') {
+      line.write(c);
+    }
+    if (c == -1 && line.size() == 0) return null;
+    return line.toString(StandardCharsets.UTF_8);
+  }
+}
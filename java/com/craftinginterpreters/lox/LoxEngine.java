@@ -0,0 +1,184 @@
+package com.craftinginterpreters.lox;
+
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// entry point for embedding jlox. compile() turns source into an immutable Script, run() executes one in a fresh
+// Interpreter, so any number of threads can compile and run scripts at the same time. errors come back as
+// Diagnostics instead of being printed. compiled scripts are kept in an LRU cache keyed by a hash of the
+// source, so compiling the same source again is a lookup.
+//
+//   LoxEngine engine = new LoxEngine();
+//   Script script = engine.compile("print greeting + \", \" + name;");
+//   engine.run(script, Map.of("greeting", "hello", "name", "lox"), writer);
+//
+// jobs that all start by running the same prelude can run it once, checkpoint() the result and run each job
+// from there, in a fork that only copies the state it changes:
+//
+//   Checkpoint prelude = engine.checkpoint(engine.compile(preludeSource), writer);
+//   engine.run(prelude, engine.compile(jobSource), null, writer);
+//
+// see LoxScriptEngine for the javax.script (JSR-223) front.
+public final class LoxEngine {
+  public static final int DEFAULT_CACHE_SIZE = 256;
+
+  private final Map<String, Script> cache;
+
+  public LoxEngine() {
+    this(DEFAULT_CACHE_SIZE);
+  }
+
+  public LoxEngine(int cacheSize) {
+    // an access-ordered LinkedHashMap is an LRU cache once it evicts its eldest entry.
+    this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, Script> eldest) {
+        return size() > cacheSize;
+      }
+    };
+  }
+
+  public Script compile(String source) {
+    String key = ScriptCache.hex(ScriptCache.sha256().digest(source.getBytes(StandardCharsets.UTF_8)));
+    synchronized (cache) {
+      Script script = cache.get(key);
+      if (script != null) return script;
+    }
+
+    // compiled outside the lock. two threads racing on the same source both compile it, which is harmless.
+    Script script = compileUncached(source);
+    synchronized (cache) {
+      cache.put(key, script);
+    }
+    return script;
+  }
+
+  // runs the script with the given globals defined, writing whatever it prints to `output`. afterwards, the
+  // globals the script defined or assigned are written back into `bindings` (if it isn't null or read-only).
+  // returns the compile diagnostics for a script that has errors (without running it), otherwise the runtime
+  // error that stopped it, if any.
+  //
+  // Java numbers and strings are converted to their Lox counterparts; other objects are passed through as
+  // opaque values. a binding the script never assigned keeps the value the caller passed, e.g. an Integer 3
+  // stays an Integer rather than coming back as the Lox number 3.0.
+  public List<Diagnostic> run(Script script, Map<String, Object> bindings, Writer output) {
+    return run(null, script, bindings, output);
+  }
+
+  // runs `prelude`, then freezes the state it leaves behind so scripts can be run on top of it. if the prelude
+  // has compile errors or fails at runtime, the checkpoint has them as its diagnostics.
+  public Checkpoint checkpoint(Script prelude, Writer output) {
+    return checkpoint(null, prelude, output);
+  }
+
+  // like checkpoint(prelude, output), running the prelude on top of `base` the way run(base, ...) would, e.g. a
+  // library's checkpoint with one tenant's setup on top. `base` is left as it was, and a base with errors is
+  // returned as it is.
+  public Checkpoint checkpoint(Checkpoint base, Script prelude, Writer output) {
+    if (base != null && base.hasErrors()) return base;
+    if (prelude.hasErrors()) return new Checkpoint(new HashMap<>(), Map.of(), null, prelude.diagnostics());
+
+    Diagnostics diagnostics = new Diagnostics();
+    PrintWriter out = output instanceof PrintWriter ? (PrintWriter)output : new PrintWriter(output);
+    Interpreter interpreter = base == null ? new Interpreter(prelude.locals, diagnostics, out)
+                                           : base.fork(prelude.locals, diagnostics, out);
+    PhaseTimer execute = PhaseTimer.begin(PhaseTimer.Phase.EXECUTE, null);
+    try {
+      interpreter.interpret(prelude.statements);
+    } finally {
+      out.flush();
+      execute.end();
+    }
+    return interpreter.checkpoint(diagnostics.list);
+  }
+
+  // like run(script, ...), starting from the state in `checkpoint` (with its globals defined) instead of from
+  // scratch. the checkpoint itself is left as it was, so it can be run from any number of times, concurrently.
+  // written-back bindings leave out globals that are still as the checkpoint has them.
+  public List<Diagnostic> run(Checkpoint checkpoint, Script script, Map<String, Object> bindings, Writer output) {
+    if (checkpoint != null && checkpoint.hasErrors()) return checkpoint.diagnostics();
+    if (script.hasErrors()) return script.diagnostics();
+
+    Diagnostics diagnostics = new Diagnostics();
+    PrintWriter out = output instanceof PrintWriter ? (PrintWriter)output : new PrintWriter(output);
+    Interpreter interpreter = checkpoint == null ? new Interpreter(script.locals, diagnostics, out)
+                                                 : checkpoint.fork(script.locals, diagnostics, out);
+
+    if (bindings != null) {
+      for (Map.Entry<String, Object> binding : bindings.entrySet()) {
+        interpreter.globals.put(binding.getKey(), toLox(binding.getValue()));
+      }
+    }
+    // note: what the script finds, so what it assigns can be told apart by identity.
+    Map<String, Object> initial = bindings == null ? null : new HashMap<>(interpreter.globals);
+
+    PhaseTimer execute = PhaseTimer.begin(PhaseTimer.Phase.EXECUTE, null);
+    try {
+      interpreter.interpret(script.statements);
+    } finally {
+      out.flush();
+      execute.end();
+    }
+
+    if (bindings != null) {
+      try {
+        for (Map.Entry<String, Object> global : interpreter.globals.entrySet()) {
+          Object value = global.getValue();
+          if (initial.get(global.getKey()) == value && initial.containsKey(global.getKey())) continue;
+          bindings.put(global.getKey(), value == Environment.uninitialized ? null : value);
+        }
+      } catch (UnsupportedOperationException e) {
+        // read-only bindings, e.g. Map.of(). nothing to write back to.
+      }
+    }
+
+    return diagnostics.list;
+  }
+
+  private static Script compileUncached(String source) {
+    Diagnostics diagnostics = new Diagnostics();
+    PhaseTimer scan = PhaseTimer.begin(PhaseTimer.Phase.SCAN, null);
+    List<Token> tokens = new Scanner(source, 1, diagnostics).scanTokens();
+    scan.end();
+    PhaseTimer parse = PhaseTimer.begin(PhaseTimer.Phase.PARSE, null);
+    List<Stmt> statements = new Parser(tokens, false, diagnostics).parse();
+    parse.end();
+
+    Map<Expr, ResolvedVarInfo> locals = new HashMap<>();
+    if (diagnostics.list.isEmpty()) {
+      PhaseTimer resolve = PhaseTimer.begin(PhaseTimer.Phase.RESOLVE, null);
+      new Resolver(locals, diagnostics).resolve(statements);
+      resolve.end();
+    }
+
+    // a failed parse leaves holes in the statements, and a script with errors never runs anyway.
+    if (!diagnostics.list.isEmpty()) return new Script(source, List.of(), Map.of(), diagnostics.list);
+    return new Script(source, statements, locals, diagnostics.list);
+  }
+
+  private static Object toLox(Object value) {
+    if (value instanceof Number) return ((Number)value).doubleValue();
+    if (value instanceof CharSequence || value instanceof Character) return value.toString();
+    return value;
+  }
+
+  private static final class Diagnostics implements ErrorReporter {
+    final List<Diagnostic> list = new ArrayList<>();
+
+    @Override
+    public void report(int line, String where, String message) {
+      list.add(new Diagnostic(Diagnostic.Kind.COMPILE, line, where, message));
+    }
+
+    @Override
+    public void runtimeError(RuntimeError error) {
+      list.add(new Diagnostic(Diagnostic.Kind.RUNTIME, error.token.line, "", error.getMessage()));
+    }
+  }
+}
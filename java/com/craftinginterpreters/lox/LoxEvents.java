@@ -0,0 +1,125 @@
+package com.craftinginterpreters.lox;
+
+import java.util.List;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+// JDK Flight Recorder events for what jlox is doing, so a recording shows Lox phases, slow Lox calls and
+// runtime errors next to the GC pauses and I/O around them, instead of anonymous Interpreter.visit* frames.
+// they're in the "Lox" category and can be configured like any JDK event, e.g.
+//   java -XX:StartFlightRecording=filename=lox.jfr,lox.Call#threshold=10ms ...
+//   jfr print --categories Lox lox.jfr
+//
+// until JFR has been started (by -XX:StartFlightRecording, jcmd JFR.start, ...) none of the event classes are
+// even loaded: loading the first one pulls in much of jdk.jfr, which would add a few hundred ms to every jlox
+// startup. after that, with no recording running, the phase and error events are a handful of no-op calls per
+// script, and calls aren't wrapped at all (see callsEnabled()).
+final class LoxEvents {
+  @Name("lox.Phase")
+  @Label("Lox Phase")
+  @Category("Lox")
+  @Description("Scanning, parsing, resolving or executing a script")
+  @StackTrace(false)
+  static final class PhaseEvent extends Event {
+    @Label("Phase")
+    String phase;
+
+    @Label("Script")
+    String script;
+  }
+
+  @Name("lox.Call")
+  @Label("Lox Call")
+  @Category("Lox")
+  @Description("A call of a Lox function, method, class or native that took longer than the threshold")
+  @Threshold("1 ms")
+  @StackTrace(false)
+  static final class CallEvent extends Event {
+    @Label("Function")
+    String function;
+
+    @Label("Line")
+    @Description("Line of the call")
+    int line;
+
+    @Label("Script")
+    String script;
+  }
+
+  @Name("lox.RuntimeError")
+  @Label("Lox Runtime Error")
+  @Category("Lox")
+  @Description("A runtime error that stopped a script")
+  @StackTrace(false)
+  static final class RuntimeErrorEvent extends Event {
+    @Label("Message")
+    String message;
+
+    @Label("Line")
+    int line;
+
+    @Label("Script")
+    String script;
+  }
+
+  // note: isEnabled() is only true while a recording with lox.Call turned on is running. in a holder class, so
+  // it's only created once JFR is up.
+  private static final class Calls {
+    static final CallEvent PROBE = new CallEvent();
+  }
+
+  static boolean callsEnabled() {
+    return FlightRecorder.isInitialized() && Calls.PROBE.isEnabled();
+  }
+
+  static Object call(Interpreter interpreter, Token paren, LoxCallable function, List<Object> arguments) {
+    CallEvent event = new CallEvent();
+    event.begin();
+    try {
+      return function.call(interpreter, arguments);
+    } finally {
+      event.end();
+      if (event.shouldCommit()) {
+        event.function = CallProfiler.label(interpreter, function);
+        event.line = paren.line;
+        event.script = interpreter.scriptName;
+        event.commit();
+      }
+    }
+  }
+
+  // null while JFR isn't up.
+  static PhaseEvent begin() {
+    if (!FlightRecorder.isInitialized()) return null;
+    PhaseEvent event = new PhaseEvent();
+    event.begin();
+    return event;
+  }
+
+  static void end(PhaseEvent event, String phase, String script) {
+    if (event == null) return;
+    event.end();
+    if (event.shouldCommit()) {
+      event.phase = phase;
+      event.script = script;
+      event.commit();
+    }
+  }
+
+  static void runtimeError(RuntimeError error, String script) {
+    if (!FlightRecorder.isInitialized()) return;
+    RuntimeErrorEvent event = new RuntimeErrorEvent();
+    if (event.shouldCommit()) {
+      event.message = error.getMessage();
+      event.line = error.token.line;
+      event.script = script;
+      event.commit();
+    }
+  }
+}
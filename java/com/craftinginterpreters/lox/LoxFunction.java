@@ -1,5 +1,6 @@
 package com.craftinginterpreters.lox;
 
+import java.util.Deque;
 import java.util.List;
 
 class LoxFunction implements LoxCallable {
@@ -23,6 +24,20 @@ class LoxFunction implements LoxCallable {
     return new LoxFunction(name, declaration, environment, isInitializer);
   }
 
+  // null for a lambda.
+  String name() {
+    return name;
+  }
+
+  Expr.Function declaration() {
+    return declaration;
+  }
+
+  // functions are immutable, but their closures aren't. see Checkpoint.
+  void freeze(Deque<Object> pending) {
+    if (closure != null) pending.push(closure);
+  }
+
   @Override
   public String toString() {
     // do other langs use a '#', or am I tripping? '@' is also used, for mem loc.?
@@ -37,6 +52,11 @@ class LoxFunction implements LoxCallable {
 
   @Override
   public Object call(Interpreter interpreter, List<Object> arguments) {
+    if (declaration.lazyBody != null && !declaration.lazyBody.isCompiled()) {
+      declaration.lazyBody.compile(declaration, interpreter, interpreter.reporter());
+    }
+
+    if (interpreter.metrics != null) interpreter.metrics.environments.increment();
     Environment environment = new Environment(closure);
     for (int i = 0; i < declaration.params.size(); i++) {
       environment.define(arguments.get(i));
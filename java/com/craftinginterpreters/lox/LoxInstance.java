@@ -1,5 +1,6 @@
 package com.craftinginterpreters.lox;
 
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -7,12 +8,15 @@ class LoxInstance {
   private LoxClass klass;
   private final Map<String, Object> fields = new HashMap<>();
 
+  // see Environment.frozen.
+  boolean frozen = false;
 
   LoxInstance(LoxClass klass) {
     this.klass = klass;
   }
 
-  Object get(Token name) {
+  Object get(Token name, Overlay overlay) {
+    Map<String, Object> fields = fields(overlay, false);
     if (fields.containsKey(name.lexeme)) {
       return fields.get(name.lexeme);
     }
@@ -23,8 +27,39 @@ class LoxInstance {
     throw new RuntimeError(name, "Undefined property '" + name.lexeme + "'.");
   }
 
-  void set(Token name, Object value) {
-    fields.put(name.lexeme, value);
+  void set(Token name, Object value, Overlay overlay) {
+    fields(overlay, true).put(name.lexeme, value);
+  }
+
+  // the fields as the overlay's interpreter sees them. a frozen instance is copied on its first write.
+  private Map<String, Object> fields(Overlay overlay, boolean write) {
+    if (!frozen) return fields;
+
+    Map<String, Object> copy = overlay.copy(this);
+    if (write && !overlay.owns(this, copy)) {
+      copy = new HashMap<>(copy != null ? copy : fields);
+      overlay.put(this, copy);
+    }
+    return copy != null ? copy : fields;
+  }
+
+  // see Environment.freeze.
+  void freeze(Deque<Object> pending, Overlay overlay) {
+    Map<String, Object> fields = frozen ? fields(overlay, false) : this.fields;
+    frozen = true;
+    pending.push(klass);
+    for (Object value : fields.values()) {
+      if (value != null) pending.push(value);
+    }
+  }
+
+  // whether get() would return a newly bound method (see AllocationProfiler).
+  boolean binds(Token name, Overlay overlay) {
+    return !fields(overlay, false).containsKey(name.lexeme) && klass.findMethod(name.lexeme) != null;
+  }
+
+  String className() {
+    return klass.name;
   }
 
   @Override
@@ -0,0 +1,88 @@
+package com.craftinginterpreters.lox;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+// live interpreter metrics for processes that embed jlox, as a platform MBean named
+// com.craftinginterpreters.lox:type=Metrics (see LoxMetricsMBean for what's in it). off until register() is
+// called, or -Dlox.jmx=true is given, or jlox runs as --serve or --daemon. until then every hook is a null check.
+//
+// counters are LongAdders, which stripe their updates over cells when threads contend, so interpreters on any
+// number of threads can count without fighting over one cache line. interpreters pick up the metrics when
+// they're constructed, so ones made before register() aren't counted.
+public final class LoxMetrics implements LoxMetricsMBean {
+  public static final String OBJECT_NAME = "com.craftinginterpreters.lox:type=Metrics";
+
+  private static volatile LoxMetrics instance = null;
+
+  static {
+    if (Boolean.getBoolean("lox.jmx")) register();
+  }
+
+  private final LongAdder scripts = new LongAdder();
+  final LongAdder statements = new LongAdder();
+  final LongAdder calls = new LongAdder();
+  final LongAdder runtimeErrors = new LongAdder();
+  final LongAdder environments = new LongAdder();
+  final LongAdder instances = new LongAdder();
+  private final LongAdder callDepth = new LongAdder();
+  private final LongAccumulator maxCallDepth = new LongAccumulator(Math::max, 0);
+  private final LongAdder[] phaseNanos = new LongAdder[PhaseTimer.Phase.values().length];
+
+  private LoxMetrics() {
+    for (int i = 0; i < phaseNanos.length; i++) phaseNanos[i] = new LongAdder();
+  }
+
+  // turns the metrics on and registers the MBean, once. returns them either way.
+  public static synchronized LoxMetrics register() {
+    if (instance != null) return instance;
+
+    LoxMetrics metrics = new LoxMetrics();
+    try {
+      ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, new ObjectName(OBJECT_NAME));
+    } catch (JMException e) {
+      throw new IllegalStateException("Can't register " + OBJECT_NAME, e);
+    }
+    instance = metrics;
+    return metrics;
+  }
+
+  // null while off.
+  static LoxMetrics current() {
+    return instance;
+  }
+
+  // around every call the interpreter makes.
+  void enter(Interpreter interpreter) {
+    calls.increment();
+    callDepth.increment();
+    maxCallDepth.accumulate(++interpreter.callDepth);
+  }
+
+  void exit(Interpreter interpreter) {
+    interpreter.callDepth--;
+    callDepth.decrement();
+  }
+
+  // note: every script run has exactly one execute phase, so that's where scripts are counted.
+  void phase(PhaseTimer.Phase phase, long nanos) {
+    phaseNanos[phase.ordinal()].add(nanos);
+    if (phase == PhaseTimer.Phase.EXECUTE) scripts.increment();
+  }
+
+  @Override public long getScriptsExecuted() { return scripts.sum(); }
+  @Override public long getStatementsExecuted() { return statements.sum(); }
+  @Override public long getFunctionCalls() { return calls.sum(); }
+  @Override public long getRuntimeErrors() { return runtimeErrors.sum(); }
+  @Override public long getEnvironmentsAllocated() { return environments.sum(); }
+  @Override public long getInstancesCreated() { return instances.sum(); }
+  @Override public long getCallDepth() { return callDepth.sum(); }
+  @Override public long getMaxCallDepth() { return maxCallDepth.get(); }
+  @Override public long getScanNanos() { return phaseNanos[PhaseTimer.Phase.SCAN.ordinal()].sum(); }
+  @Override public long getParseNanos() { return phaseNanos[PhaseTimer.Phase.PARSE.ordinal()].sum(); }
+  @Override public long getResolveNanos() { return phaseNanos[PhaseTimer.Phase.RESOLVE.ordinal()].sum(); }
+  @Override public long getExecuteNanos() { return phaseNanos[PhaseTimer.Phase.EXECUTE.ordinal()].sum(); }
+}
@@ -0,0 +1,22 @@
+package com.craftinginterpreters.lox;
+
+// the JMX view of LoxMetrics. counters only go up, from when the metrics were registered. times are
+// cumulative, in nanoseconds, over every script of the process.
+public interface LoxMetricsMBean {
+  long getScriptsExecuted();
+  long getStatementsExecuted();
+  long getFunctionCalls();
+  long getRuntimeErrors();
+  long getEnvironmentsAllocated();
+  long getInstancesCreated();
+
+  // Lox calls in progress, summed over every interpreter running right now.
+  long getCallDepth();
+  // the deepest any one interpreter has been.
+  long getMaxCallDepth();
+
+  long getScanNanos();
+  long getParseNanos();
+  long getResolveNanos();
+  long getExecuteNanos();
+}
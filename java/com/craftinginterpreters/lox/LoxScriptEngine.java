@@ -0,0 +1,123 @@
+package com.craftinginterpreters.lox;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import javax.script.AbstractScriptEngine;
+import javax.script.Bindings;
+import javax.script.Compilable;
+import javax.script.CompiledScript;
+import javax.script.ScriptContext;
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineFactory;
+import javax.script.ScriptException;
+import javax.script.SimpleBindings;
+
+// JSR-223 adapter over LoxEngine. a script sees the context's global and engine scope bindings as Lox globals
+// (engine scope wins), and the globals it defines or changes end up in the engine scope. output goes to the
+// context's writer. eval() returns null, since a Lox program has no value. diagnostics become ScriptExceptions.
+public class LoxScriptEngine extends AbstractScriptEngine implements Compilable {
+  private final ScriptEngineFactory factory;
+  private final LoxEngine engine;
+
+  LoxScriptEngine(ScriptEngineFactory factory, LoxEngine engine) {
+    this.factory = factory;
+    this.engine = engine;
+  }
+
+  @Override
+  public Object eval(String script, ScriptContext context) throws ScriptException {
+    return run(compile(script, context), context);
+  }
+
+  @Override
+  public Object eval(Reader reader, ScriptContext context) throws ScriptException {
+    return eval(read(reader), context);
+  }
+
+  @Override
+  public CompiledScript compile(String script) throws ScriptException {
+    Script compiled = compile(script, context);
+    return new CompiledScript() {
+      @Override
+      public Object eval(ScriptContext context) throws ScriptException {
+        return run(compiled, context);
+      }
+
+      @Override
+      public ScriptEngine getEngine() {
+        return LoxScriptEngine.this;
+      }
+    };
+  }
+
+  @Override
+  public CompiledScript compile(Reader reader) throws ScriptException {
+    return compile(read(reader));
+  }
+
+  @Override
+  public Bindings createBindings() {
+    return new SimpleBindings();
+  }
+
+  @Override
+  public ScriptEngineFactory getFactory() {
+    return factory;
+  }
+
+  private Script compile(String source, ScriptContext context) throws ScriptException {
+    Script script = engine.compile(source);
+    if (script.hasErrors()) throw exception(script.diagnostics(), context);
+    return script;
+  }
+
+  private Object run(Script script, ScriptContext context) throws ScriptException {
+    Bindings global = context.getBindings(ScriptContext.GLOBAL_SCOPE);
+    Bindings local = context.getBindings(ScriptContext.ENGINE_SCOPE);
+
+    Map<String, Object> bindings = new HashMap<>();
+    if (global != null) bindings.putAll(global);
+    if (local != null) bindings.putAll(local);
+
+    List<Diagnostic> diagnostics = engine.run(script, bindings, context.getWriter());
+
+    if (local != null) {
+      for (Map.Entry<String, Object> binding : bindings.entrySet()) {
+        String name = binding.getKey();
+        boolean unchanged = global != null && global.containsKey(name) && !local.containsKey(name) &&
+                            Objects.equals(global.get(name), binding.getValue());
+        if (!unchanged) local.put(name, binding.getValue());
+      }
+    }
+
+    if (!diagnostics.isEmpty()) throw exception(diagnostics, context);
+    return null;
+  }
+
+  private static ScriptException exception(List<Diagnostic> diagnostics, ScriptContext context) {
+    Diagnostic first = diagnostics.get(0);
+    Object fileName = context.getAttribute(ScriptEngine.FILENAME);
+    // ScriptException appends the line itself.
+    String message = first.kind() == Diagnostic.Kind.COMPILE ? "Error" + first.where() + ": " + first.message()
+                                                              : first.message();
+    return new ScriptException(message, fileName == null ? null : fileName.toString(), first.line());
+  }
+
+  private static String read(Reader reader) throws ScriptException {
+    StringBuilder source = new StringBuilder();
+    char[] buffer = new char[8192];
+    try {
+      int read;
+      while ((read = reader.read(buffer)) != -1) {
+        source.append(buffer, 0, read);
+      }
+    } catch (IOException e) {
+      throw new ScriptException(e);
+    }
+    return source.toString();
+  }
+}
@@ -0,0 +1,91 @@
+package com.craftinginterpreters.lox;
+
+import java.util.List;
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineFactory;
+
+// makes jlox available through javax.script, e.g. new ScriptEngineManager().getEngineByName("lox"). registered
+// in META-INF/services. all engines from one factory share a LoxEngine, and with it the compiled script cache.
+public class LoxScriptEngineFactory implements ScriptEngineFactory {
+  private final LoxEngine engine = new LoxEngine();
+
+  @Override
+  public String getEngineName() {
+    return "jlox";
+  }
+
+  @Override
+  public String getEngineVersion() {
+    return "1.0";
+  }
+
+  @Override
+  public List<String> getExtensions() {
+    return List.of("lox");
+  }
+
+  @Override
+  public List<String> getMimeTypes() {
+    return List.of("application/x-lox");
+  }
+
+  @Override
+  public List<String> getNames() {
+    return List.of("lox", "jlox", "Lox");
+  }
+
+  @Override
+  public String getLanguageName() {
+    return "Lox";
+  }
+
+  @Override
+  public String getLanguageVersion() {
+    return "1.0";
+  }
+
+  @Override
+  public Object getParameter(String key) {
+    switch (key) {
+      case ScriptEngine.ENGINE:
+        return getEngineName();
+      case ScriptEngine.ENGINE_VERSION:
+        return getEngineVersion();
+      case ScriptEngine.NAME:
+        return getNames().get(0);
+      case ScriptEngine.LANGUAGE:
+        return getLanguageName();
+      case ScriptEngine.LANGUAGE_VERSION:
+        return getLanguageVersion();
+      default:
+        // note: "THREADING" stays null. every eval runs in its own interpreter, but the context's bindings are
+        // read and written back without synchronization. use LoxEngine directly to run scripts concurrently.
+        return null;
+    }
+  }
+
+  @Override
+  public String getMethodCallSyntax(String obj, String m, String... args) {
+    return obj + "." + m + "(" + String.join(", ", args) + ")";
+  }
+
+  @Override
+  public String getOutputStatement(String toDisplay) {
+    // Lox strings have no escapes, so there's no way to print a '"'.
+    return "print \"" + toDisplay.replace("\"", "'") + "\";";
+  }
+
+  @Override
+  public String getProgram(String... statements) {
+    StringBuilder program = new StringBuilder();
+    for (String statement : statements) {
+      program.append(statement).append(";\n");
+    }
+    return program.toString();
+  }
+
+  @Override
+  public ScriptEngine getScriptEngine() {
+    return new LoxScriptEngine(this, engine);
+  }
+}
@@ -0,0 +1,279 @@
+package com.craftinginterpreters.lox;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.lang.reflect.Method;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+// runs many short Lox jobs in one JVM (jlox --serve). jobs arrive over stdin, or over a Unix domain socket where
+// every connection is an independent client. each job runs in its own Interpreter with its output captured, and
+// compiled scripts are shared between jobs through one LoxEngine.
+//
+// protocol: requests and responses are a header line, possibly followed by a body of exactly the number of
+// bytes the header says (UTF-8).
+//   run <id> <bytes>\n<source>   -> result <id> <status> <wait us> <run us> <out bytes> <err bytes>\n<out><err>
+//   stats\n                      -> stats <key=value ...>\n
+// <id> is chosen by the client and must not contain spaces. <status> is one of ok, compile-error, runtime-error,
+// or rejected (the queue was full, nothing ran). the err part holds diagnostics as jlox would print them.
+// responses to run requests come back in completion order, not request order.
+//
+// jobs wait in a bounded queue and at most `concurrency` run at once, each on a virtual thread (JDK 21+) or
+// else on a pool of `concurrency` platform threads.
+class LoxServer {
+  private final LoxEngine engine = new LoxEngine();
+  private final ExecutorService executor;
+  private final int concurrency;
+  private final Semaphore slots;
+  private final BlockingQueue<Job> queue;
+
+  private final LatencyHistogram waitTimes = new LatencyHistogram();
+  private final LatencyHistogram runTimes = new LatencyHistogram();
+  private final AtomicLong rejected = new AtomicLong();
+
+  private static final class Job {
+    final String id;
+    final String source;
+    final Connection connection;
+    final long received = System.nanoTime();
+
+    Job(String id, String source, Connection connection) {
+      this.id = id;
+      this.source = source;
+      this.connection = connection;
+    }
+  }
+
+  // one client. responses from different jobs are written whole, one at a time.
+  private static final class Connection {
+    private final OutputStream out;
+    private int pending = 0;
+
+    Connection(OutputStream out) {
+      this.out = new BufferedOutputStream(out);
+    }
+
+    synchronized void started() {
+      pending++;
+    }
+
+    synchronized void finished() {
+      pending--;
+      notifyAll();
+    }
+
+    synchronized void awaitIdle() throws InterruptedException {
+      while (pending > 0) wait();
+    }
+
+    synchronized void send(String header, byte[]... bodies) throws IOException {
+      out.write((header + "\n").getBytes(StandardCharsets.UTF_8));
+      for (byte[] body : bodies) {
+        out.write(body);
+      }
+      out.flush();
+    }
+  }
+
+  LoxServer(int concurrency, int queueCapacity) {
+    this.concurrency = concurrency;
+    this.slots = new Semaphore(concurrency);
+    this.queue = new ArrayBlockingQueue<>(queueCapacity);
+    this.executor = jobExecutor(concurrency);
+
+    Thread dispatcher = new Thread(this::dispatch, "lox-dispatcher");
+    dispatcher.setDaemon(true);
+    dispatcher.start();
+  }
+
+  // serves one client until its input ends and all its jobs have answered.
+  void serve(InputStream input, OutputStream output) throws IOException {
+    InputStream in = new BufferedInputStream(input);
+    Connection connection = new Connection(output);
+
+    try {
+      String header;
+      while ((header = readLine(in)) != null) {
+        if (header.isEmpty()) continue;
+        String[] parts = header.split(" ");
+
+        if (parts[0].equals("stats") && parts.length == 1) {
+          connection.send("stats " + stats());
+        } else if (parts[0].equals("run") && parts.length == 3) {
+          int length;
+          try {
+            length = Integer.parseInt(parts[2]);
+          } catch (NumberFormatException e) {
+            length = -1;
+          }
+          byte[] body = length < 0 ? null : in.readNBytes(length);
+          if (body == null || body.length < length) {
+            // no way to find the next request after a bad body. give up on this client.
+            connection.send("error bad request: " + header);
+            break;
+          }
+          submit(new Job(parts[1], new String(body, StandardCharsets.UTF_8), connection));
+        } else {
+          connection.send("error bad request: " + header);
+          break;
+        }
+      }
+
+      connection.awaitIdle();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  // accepts clients on a Unix domain socket until the process is killed.
+  void listen(Path socket) throws IOException {
+    Files.deleteIfExists(socket);
+    ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+    server.bind(UnixDomainSocketAddress.of(socket));
+    socket.toFile().deleteOnExit();
+
+    while (true) {
+      SocketChannel client = server.accept();
+      Thread thread = new Thread(() -> {
+        try (client) {
+          serve(Channels.newInputStream(client), Channels.newOutputStream(client));
+        } catch (IOException e) {
+          // the client went away. its remaining jobs still run, their responses are dropped.
+        }
+      }, "lox-client");
+      thread.setDaemon(true);
+      thread.start();
+    }
+  }
+
+  // wait is the time a job spent queued, run the time it took to compile (or find in the cache) and run.
+  String stats() {
+    return "completed=" + runTimes.count() + " rejected=" + rejected.get() + " queued=" + queue.size() +
+           " running=" + (concurrency - slots.availablePermits()) +
+           " wait_p50_us=" + micros(waitTimes.percentile(0.5)) +
+           " wait_p99_us=" + micros(waitTimes.percentile(0.99)) +
+           " run_p50_us=" + micros(runTimes.percentile(0.5)) +
+           " run_p90_us=" + micros(runTimes.percentile(0.9)) +
+           " run_p99_us=" + micros(runTimes.percentile(0.99)) +
+           " run_max_us=" + micros(runTimes.max());
+  }
+
+  private void submit(Job job) throws IOException {
+    job.connection.started();
+    if (!queue.offer(job)) {
+      rejected.incrementAndGet();
+      job.connection.finished();
+      job.connection.send("result " + job.id + " rejected 0 0 0 0");
+    }
+  }
+
+  private void dispatch() {
+    while (true) {
+      try {
+        Job job = queue.take();
+        slots.acquire();
+        executor.execute(() -> {
+          try {
+            run(job);
+          } finally {
+            slots.release();
+          }
+        });
+      } catch (InterruptedException e) {
+        return;
+      }
+    }
+  }
+
+  // answers the job whatever happens to it, so its client never waits on it forever.
+  private void run(Job job) {
+    try {
+      answer(job);
+    } finally {
+      job.connection.finished();
+    }
+  }
+
+  private void answer(Job job) {
+    long started = System.nanoTime();
+    waitTimes.record(started - job.received);
+
+    StringWriter out = new StringWriter();
+    String status = "ok";
+    StringBuilder err = new StringBuilder();
+    try {
+      Script script = engine.compile(job.source);
+      for (Diagnostic diagnostic : engine.run(script, null, out)) {
+        status = diagnostic.kind() == Diagnostic.Kind.COMPILE ? "compile-error" : "runtime-error";
+        err.append(diagnostic).append('\n');
+      }
+    } catch (StackOverflowError e) {
+      // a runaway recursion mustn't take the server down with it.
+      status = "runtime-error";
+      err.append("Stack overflow.\n");
+    } catch (RuntimeException | Error e) {
+      // note: a bug in jlox, or the job running out of memory. it fails like a runtime error (exit code 70), and
+      // the server carries on with the next job.
+      status = "runtime-error";
+      err.append("Internal error: ").append(e).append('\n');
+    }
+    long runTime = System.nanoTime() - started;
+    runTimes.record(runTime);
+
+    byte[] outBytes = out.toString().getBytes(StandardCharsets.UTF_8);
+    byte[] errBytes = err.toString().getBytes(StandardCharsets.UTF_8);
+    try {
+      job.connection.send("result " + job.id + " " + status + " " + micros(started - job.received) + " " +
+                          micros(runTime) + " " + outBytes.length + " " + errBytes.length, outBytes, errBytes);
+    } catch (IOException e) {
+      // the client went away.
+    }
+  }
+
+  private static long micros(long nanos) {
+    return nanos / 1000;
+  }
+
+  // the header line, without its '\n', or null at the end of the input.
+  private static String readLine(InputStream in) throws IOException {
+    ByteArrayOutputStream line = new ByteArrayOutputStream();
+    int c;
+    while ((c = in.read()) != -1 && c != '\n') {
+      line.write(c);
+    }
+    if (c == -1 && line.size() == 0) return null;
+    return line.toString(StandardCharsets.UTF_8).trim();
+  }
+
+  // a virtual thread per job where the JDK has them (looked up reflectively, since this tree targets 17), else
+  // a pool as big as the concurrency limit.
+  private static ExecutorService jobExecutor(int concurrency) {
+    try {
+      Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+      return (ExecutorService)factory.invoke(null);
+    } catch (ReflectiveOperationException e) {
+      return Executors.newFixedThreadPool(concurrency, runnable -> {
+        Thread thread = new Thread(runnable, "lox-job");
+        thread.setDaemon(true);
+        return thread;
+      });
+    }
+  }
+}
@@ -0,0 +1,9 @@
+package com.craftinginterpreters.lox;
+
+// thrown by a native function that was called wrong. natives don't know where they were called from, so the
+// interpreter making the call turns it into a RuntimeError on the call's paren.
+class NativeError extends RuntimeException {
+  NativeError(String message) {
+    super(message);
+  }
+}
@@ -0,0 +1,38 @@
+package com.craftinginterpreters.lox;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+// an interpreter's private copies of the frozen environments and instances (see Checkpoint) it has written to,
+// keyed by the frozen original. everything it only reads stays shared.
+//
+// a checkpoint taken from a fork keeps the fork's overlay as its `base` (see Interpreter.checkpoint), so the
+// interpreters forked from it see those copies too, and copy them again on their own first write.
+final class Overlay {
+  private final Overlay base;
+  private final Map<Object, Object> copies = new IdentityHashMap<>();
+
+  Overlay(Overlay base) {
+    this.base = base;
+  }
+
+  // the copy this overlay's interpreter sees, its own or a base's. null if it sees the frozen original.
+  @SuppressWarnings("unchecked")
+  <T> T copy(Object frozen) {
+    for (Overlay overlay = this; overlay != null; overlay = overlay.base) {
+      Object copy = overlay.copies.get(frozen);
+      if (copy != null) return (T)copy;
+    }
+    return null;
+  }
+
+  // whether `copy`, what copy(frozen) returned, can be written. a base's copies are frozen like the originals.
+  boolean owns(Object frozen, Object copy) {
+    if (copy == null) return false;
+    return base == null || copies.get(frozen) == copy;
+  }
+
+  void put(Object frozen, Object copy) {
+    copies.put(frozen, copy);
+  }
+}
@@ -17,8 +17,25 @@ class Parser {
 
   private int loopDepth = 0;
 
+  // lazy mode: bodies of top-level functions and methods are only brace-matched here and parsed on first call.
+  // see LazyFunctionBody.
+  private final boolean lazyFunctions;
+  private int blockDepth = 0;
+
+  private final ErrorReporter reporter;
+
   Parser(List<Token> tokens) {
+    this(tokens, false);
+  }
+
+  Parser(List<Token> tokens, boolean lazyFunctions) {
+    this(tokens, lazyFunctions, Lox.reporter);
+  }
+
+  Parser(List<Token> tokens, boolean lazyFunctions, ErrorReporter reporter) {
     this.tokens = tokens;
+    this.lazyFunctions = lazyFunctions;
+    this.reporter = reporter;
   }
 
   List<Stmt> parse() {
@@ -47,6 +64,29 @@ class Parser {
     return statements;
   }
 
+  // streaming (see Lox.runStream): the next top-level declaration, or null if it had syntax errors, which were
+  // reported. position() is the index of the token after it.
+  Stmt parseDeclaration() {
+    return declaration();
+  }
+
+  boolean atEnd() {
+    return isAtEnd();
+  }
+
+  int position() {
+    return current;
+  }
+
+  // parses the tokens of a function body that was skipped in lazy mode, i.e. everything after the '{'.
+  List<Stmt> parseFunctionBody() {
+    try {
+      return block();
+    } catch (ParseError error) {
+      return new ArrayList<>();
+    }
+  }
+
   private Stmt declaration() {
     try {
       if (match(CLASS)) return classDeclaration();
@@ -80,10 +120,12 @@ class Parser {
 
   private Stmt.Function function(String kind) {
     Token name = consume(IDENTIFIER, "Expect " + kind + " name.");
-    return new Stmt.Function(name, functionBody(kind));
+    return new Stmt.Function(name, functionBody(kind, name));
   }
 
-  private Expr.Function functionBody(String kind) {
+  private Expr.Function functionBody(String kind, Token name) {
+    // the function's name, or `fun` for a lambda.
+    Token start = previous();
     consume(LEFT_PAREN, "Expect '(' after " + kind + " name.");
     List<Token> parameters = new ArrayList<>();
     if (!check(RIGHT_PAREN)) {
@@ -98,8 +140,44 @@ class Parser {
     consume(RIGHT_PAREN, "Expect ')' after parameters.");
 
     consume(LEFT_BRACE, "Expect '{' before function body.");
+    // note: only named functions and methods. those are declarations, so outside any block they're top-level. a
+    // lambda can be in a scope without a block, like the one a desugared `for` adds.
+    if (lazyFunctions && blockDepth == 0 && name != null) {
+      boolean isMethod = kind.equals("method");
+      boolean isInitializer = isMethod && name.lexeme.equals("init");
+      LazyFunctionBody lazy = skipFunctionBody(isMethod, isInitializer);
+      if (lazy != null) return new Expr.Function(start, parameters, new ArrayList<>(), lazy);
+    }
+
     List<Stmt> body = block();
-    return new Expr.Function(parameters, body);
+    return new Expr.Function(start, parameters, body, null);
+  }
+
+  // only checks that braces and parentheses are balanced. any other syntax errors in the body are reported when
+  // it's first called. if they aren't balanced, returns null with nothing consumed, and the body is parsed right
+  // away like it would be without --lazy, so those errors are the same either way.
+  private LazyFunctionBody skipFunctionBody(boolean isMethod, boolean isInitializer) {
+    Token brace = previous();
+    int start = current;
+    List<TokenType> open = new ArrayList<>();
+    open.add(LEFT_BRACE);
+
+    while (!isAtEnd()) {
+      Token token = advance();
+      if (token.type == LEFT_BRACE || token.type == LEFT_PAREN) {
+        open.add(token.type);
+      } else if (token.type == RIGHT_BRACE || token.type == RIGHT_PAREN) {
+        TokenType expected = open.remove(open.size() - 1);
+        if ((expected == LEFT_BRACE) != (token.type == RIGHT_BRACE)) break;
+        if (open.isEmpty()) {
+          List<Token> body = new ArrayList<>(tokens.subList(start, current));
+          return new LazyFunctionBody(brace, body, isMethod, isInitializer);
+        }
+      }
+    }
+
+    current = start;
+    return null;
   }
 
   private Stmt varDeclaration() {
@@ -241,8 +319,13 @@ class Parser {
   private List<Stmt> block() {
     List<Stmt> statements = new ArrayList<>();
 
-    while (!check(RIGHT_BRACE) && !isAtEnd()) {
-      statements.add(declaration());
+    try {
+      blockDepth++;
+      while (!check(RIGHT_BRACE) && !isAtEnd()) {
+        statements.add(declaration());
+      }
+    } finally {
+      blockDepth--;
     }
 
     consume(RIGHT_BRACE, "Expect '}' after block.");
@@ -250,141 +333,132 @@ class Parser {
   }
 
   private Expr expression() {
-    return comma();
-  }
-
-  // todo: encapsulate this and all other higher-precedence expr matching funcs into a single func parameterized on
-  // operator and operand type. we can do this because all take the form A = B ((op1 | op2 | ...) B)*
-  // i.e., it's left associate, and done in this flat while loop style. analog could be done for r-assoc, too.
-  private Expr comma() {
-    Expr expr = assignment();
-
-    while (match(COMMA)) {
-      Token operator = previous();
-      Expr right = assignment();
-      expr = new Expr.Binary(expr, operator, right);
-    }
-
-    return expr;
-  }
-
-
-  private Expr assignment() {
-    Expr expr = conditional();
+    return parsePrecedence(Precedence.COMMA);
+  }
+
+  // binding power of each operator, loosest first. this replaces the old one-method-per-level descent
+  // (comma -> assignment -> conditional -> ... -> unary), which cost a dozen frames for every primary.
+  // the grammar in GRAMMAR.txt is unchanged, it's just encoded in this table instead of the call graph.
+  private enum Precedence {
+    NONE,
+    COMMA,       // ,
+    ASSIGNMENT,  // =
+    CONDITIONAL, // ?:
+    OR,          // or
+    AND,         // and
+    EQUALITY,    // == !=
+    COMPARISON,  // < > <= >=
+    TERM,        // + -
+    FACTOR,      // * /
+    UNARY;       // ! -
+
+    Precedence next() {
+      return values()[ordinal() + 1];
+    }
+  }
+
+  private Precedence infixPrecedence(TokenType type) {
+    switch (type) {
+      case COMMA:
+        return Precedence.COMMA;
+      case EQUAL:
+        return Precedence.ASSIGNMENT;
+      case QUESTION:
+        return Precedence.CONDITIONAL;
+      case OR:
+        return Precedence.OR;
+      case AND:
+        return Precedence.AND;
+      case BANG_EQUAL:
+      case EQUAL_EQUAL:
+        return Precedence.EQUALITY;
+      case GREATER:
+      case GREATER_EQUAL:
+      case LESS:
+      case LESS_EQUAL:
+        return Precedence.COMPARISON;
+      case MINUS:
+      case PLUS:
+        return Precedence.TERM;
+      case SLASH:
+      case STAR:
+        return Precedence.FACTOR;
+      default:
+        return Precedence.NONE;
+    }
+  }
+
+  // precedence climbing: parse an operand, then keep folding in infix operators that bind at least as tightly
+  // as `minPrecedence`. left-assoc operators parse their right operand one level tighter, right-assoc ones
+  // (assignment, conditional) at their own level. stack depth only grows with operator precedence, not with
+  // the number of grammar levels, so a bare primary is a constant number of frames deep.
+  private Expr parsePrecedence(Precedence minPrecedence) {
+    Expr expr = unary();
 
-    if (match(EQUAL)) {
-      Token equals = previous();
-      Expr value = assignment();
-
-      if (expr instanceof Expr.Variable) {
-        Token name = ((Expr.Variable)expr).name;
-        return new Expr.Assign(name, value);
-      } else if (expr instanceof Expr.Get) {
-        Expr.Get get = (Expr.Get)expr;
-        return new Expr.Set(get.object, get.name, value);
+    while (true) {
+      Precedence precedence = infixPrecedence(peek().type);
+      if (precedence == Precedence.NONE || precedence.compareTo(minPrecedence) < 0) break;
+
+      Token operator = advance();
+      switch (operator.type) {
+        case EQUAL:
+          expr = assignment(expr, operator);
+          break;
+        case QUESTION:
+          expr = conditional(expr);
+          break;
+        case AND:
+        case OR:
+          expr = new Expr.Logical(expr, operator, parsePrecedence(precedence.next()));
+          break;
+        default:
+          expr = new Expr.Binary(expr, operator, parsePrecedence(precedence.next()));
+          break;
       }
-
-      error(equals, "Invalid assignment target.");
-    }
-
-    return expr;
-  }
-
-  private Expr conditional() {
-    Expr expr = or();
-
-    if (match(QUESTION)) {
-      Expr thenBranch = conditional();
-      consume(COLON, "Expect ':' after '?' in conditional expression.");
-      Expr elseBranch = conditional();
-      expr = new Expr.Conditional(expr, thenBranch, elseBranch);
-    }
-
-    return expr;
-  }
-
-  private Expr or() {
-    Expr expr = and();
-
-    while (match(OR)) {
-      Token operator = previous();
-      Expr right = and();
-      expr = new Expr.Logical(expr, operator, right);
-    }
-
-    return expr;
-  }
-
-  private Expr and() {
-    Expr expr = equality();
-
-    while (match(AND)) {
-      Token operator = previous();
-      Expr right = equality();
-      expr = new Expr.Logical(expr, operator, right);
     }
 
     return expr;
   }
 
-  private Expr equality() {
-    Expr expr = comparison();
+  private Expr assignment(Expr target, Token equals) {
+    Expr value = parsePrecedence(Precedence.ASSIGNMENT);
 
-    while (match(BANG_EQUAL, EQUAL_EQUAL)) {
-      Token operator = previous();
-      Expr right = comparison();
-      expr = new Expr.Binary(expr, operator, right);
+    if (target instanceof Expr.Variable) {
+      Token name = ((Expr.Variable)target).name;
+      return new Expr.Assign(name, value);
+    } else if (target instanceof Expr.Get) {
+      Expr.Get get = (Expr.Get)target;
+      return new Expr.Set(get.object, get.name, value);
     }
 
-    return expr;
+    error(equals, "Invalid assignment target.");
+    return target;
   }
 
-  private Expr comparison() {
-    Expr expr = term();
-
-    while (match(GREATER, GREATER_EQUAL, LESS, LESS_EQUAL)) {
-      Token operator = previous();
-      Expr right = term();
-      expr = new Expr.Binary(expr, operator, right);
-    }
-
-    return expr;
+  private Expr conditional(Expr condition) {
+    Expr thenBranch = parsePrecedence(Precedence.CONDITIONAL);
+    consume(COLON, "Expect ':' after '?' in conditional expression.");
+    Expr elseBranch = parsePrecedence(Precedence.CONDITIONAL);
+    return new Expr.Conditional(condition, thenBranch, elseBranch);
   }
 
-  private Expr term() {
-    Expr expr = factor();
-
-    while (match(MINUS, PLUS)) {
-      Token operator = previous();
-      Expr right = factor();
-      expr = new Expr.Binary(expr, operator, right);
+  // prefix operators are collected in a loop rather than by recursion, so `!!!!x` doesn't grow the stack either.
+  private Expr unary() {
+    List<Token> operators = null;
+    while (match(BANG, MINUS)) {
+      if (operators == null) operators = new ArrayList<>();
+      operators.add(previous());
     }
 
-    return expr;
-  }
+    Expr expr = call();
+    if (operators == null) return expr;
 
-  private Expr factor() {
-    Expr expr = unary();
-
-    while (match(SLASH, STAR)) {
-      Token operator = previous();
-      Expr right = unary();
-      expr = new Expr.Binary(expr, operator, right);
+    for (int i = operators.size() - 1; i >= 0; i--) {
+      expr = new Expr.Unary(operators.get(i), expr);
     }
-
     return expr;
   }
 
-  private Expr unary() {
-    if (match(BANG, MINUS)) {
-      Token operator = previous();
-      Expr right = unary();
-      return new Expr.Unary(operator, right);
-    }
-
-    return call();
-  }
-
   private Expr call() {
     Expr expr = primary();
 
@@ -409,7 +483,7 @@ class Parser {
         if (arguments.size() >= 255) {
           error(peek(), "Can't have more than 255 arguments.");
         }
-        arguments.add(conditional()); // subtle: skip over comma expressions so foo(a,b) doesn't get parsed as foo((a,b))
+        arguments.add(parsePrecedence(Precedence.CONDITIONAL)); // subtle: skip over comma expressions so foo(a,b) doesn't get parsed as foo((a,b))
       } while (match(COMMA));
     }
 
@@ -423,7 +497,7 @@ class Parser {
     if (match(TRUE)) return new Expr.Literal(true);
     if (match(NIL)) return new Expr.Literal(null);
 
-    if (match(FUN)) return functionBody("function");
+    if (match(FUN)) return functionBody("function", null);
 
     if (match(NUMBER, STRING)) {
       return new Expr.Literal(previous().literal);
@@ -444,25 +518,25 @@ class Parser {
     // error productions
     if (match(BANG_EQUAL, EQUAL_EQUAL)) {
       error(previous(), "Missing left hand operand.");
-      equality();
+      parsePrecedence(Precedence.EQUALITY);
       return null;
     }
 
     if (match(GREATER, GREATER_EQUAL, LESS, LESS_EQUAL)) {
       error(previous(), "Missing left-hand operand.");
-      comparison();
+      parsePrecedence(Precedence.COMPARISON);
       return null;
     }
 
     if (match(PLUS)) {
       error(previous(), "Missing left-hand operand.");
-      term();
+      parsePrecedence(Precedence.TERM);
       return null;
     }
 
     if (match(SLASH, STAR)) {
       error(previous(), "Missing left-hand operand.");
-      factor();
+      parsePrecedence(Precedence.FACTOR);
       return null;
     }
 
@@ -519,7 +593,7 @@ class Parser {
   }
 
   private ParseError error(Token token, String message) {
-    Lox.error(token, message);
+    reporter.error(token, message);
     return new ParseError();
   }
 
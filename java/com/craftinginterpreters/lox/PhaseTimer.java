@@ -0,0 +1,58 @@
+package com.craftinginterpreters.lox;
+
+import java.util.Locale;
+
+// one run of a pipeline phase, reported as a JFR event (LoxEvents), added to the JMX metrics (LoxMetrics) and
+// to the run's RunStats (jlox --stats) when those are on. costs a few checks when none is.
+//
+//   PhaseTimer scan = PhaseTimer.begin(PhaseTimer.Phase.SCAN, script, stats);
+//   ...
+//   scan.end();
+final class PhaseTimer {
+  enum Phase {
+    SCAN, PARSE, RESOLVE, EXECUTE;
+
+    final String label = name().toLowerCase(Locale.ROOT);
+  }
+
+  private final Phase phase;
+  private final String script;
+  private final LoxEvents.PhaseEvent event;
+  private final LoxMetrics metrics;
+  private final RunStats stats;
+  private final long started;
+  private final long cpuStarted;
+  private final long allocatedStarted;
+
+  private PhaseTimer(Phase phase, String script, RunStats stats) {
+    this.phase = phase;
+    this.script = script;
+    this.event = LoxEvents.begin();
+    this.metrics = LoxMetrics.current();
+    this.stats = stats;
+    this.started = metrics == null && stats == null ? 0 : System.nanoTime();
+    this.cpuStarted = stats == null ? 0 : RunStats.cpuNanos();
+    this.allocatedStarted = stats == null ? 0 : RunStats.allocatedBytes();
+  }
+
+  // `script` is the file being run, or null.
+  static PhaseTimer begin(Phase phase, String script) {
+    return new PhaseTimer(phase, script, null);
+  }
+
+  // `stats` may be null.
+  static PhaseTimer begin(Phase phase, String script, RunStats stats) {
+    return new PhaseTimer(phase, script, stats);
+  }
+
+  void end() {
+    if (metrics != null || stats != null) {
+      long wall = System.nanoTime() - started;
+      if (metrics != null) metrics.phase(phase, wall);
+      if (stats != null) {
+        stats.phase(phase, wall, RunStats.cpuNanos() - cpuStarted, RunStats.allocatedBytes() - allocatedStarted);
+      }
+    }
+    LoxEvents.end(event, phase.label, script);
+  }
+}
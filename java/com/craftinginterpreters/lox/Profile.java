@@ -0,0 +1,161 @@
+package com.craftinginterpreters.lox;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+// runtime profile of one script (jlox --pgo script), kept across runs in a sidecar file next to it
+// (script.profile). it records how often each top-level function and method was called. functions are numbered
+// by the index of their name's token in the script, and the file starts with a SHA-256 of the source, so a
+// profile of any other version of the script is ignored. each run adds to the previous counts.
+//
+// what gets applied: the bodies of the functions earlier runs called are parsed and resolved up front, so only the
+// never-called ones stay lazy. that's all there is to apply, so --pgo needs --lazy.
+//
+// note: no operand or receiver types. a tree-walker has no specialized node variants to pick from them.
+class Profile {
+  private static final String HEADER = "jlox profile 1";
+
+  // for compiling bodies ahead of their first call. their errors aren't this run's to report yet.
+  private static final ErrorReporter SILENT = new ErrorReporter() {
+    @Override
+    public void report(int line, String where, String message) {
+    }
+
+    @Override
+    public void runtimeError(RuntimeError error) {
+    }
+  };
+
+  private final String hash;
+  private final Map<Token, Integer> tokenIndices = new IdentityHashMap<>();
+  private final Map<Expr.Function, Token> functionNames = new IdentityHashMap<>();
+
+  // this run.
+  private final Map<Expr.Function, long[]> calls = new IdentityHashMap<>();
+
+  // earlier runs, by token index.
+  private final Map<Integer, Long> loadedCalls = new TreeMap<>();
+
+  Profile(String source, List<Token> tokens, List<Stmt> statements) {
+    this.hash = ScriptCache.hex(ScriptCache.sha256().digest(source.getBytes(StandardCharsets.UTF_8)));
+    for (int i = 0; i < tokens.size(); i++) {
+      tokenIndices.put(tokens.get(i), i);
+    }
+    for (Stmt statement : statements) {
+      if (statement instanceof Stmt.Function) {
+        Stmt.Function function = (Stmt.Function)statement;
+        functionNames.put(function.function, function.name);
+      } else if (statement instanceof Stmt.Class) {
+        for (Stmt.Function method : ((Stmt.Class)statement).methods) {
+          functionNames.put(method.function, method.name);
+        }
+      }
+    }
+  }
+
+  // a class counts as a call to its initializer.
+  void call(LoxCallable callee) {
+    LoxFunction function = callee instanceof LoxClass ? ((LoxClass)callee).findMethod("init")
+                                                       : callee instanceof LoxFunction ? (LoxFunction)callee : null;
+    if (function != null) call(function.declaration());
+  }
+
+  private void call(Expr.Function function) {
+    long[] count = calls.get(function);
+    if (count == null) {
+      if (!functionNames.containsKey(function)) return; // not top-level.
+      count = new long[1];
+      calls.put(function, count);
+    }
+    count[0]++;
+  }
+
+  // reads the profile earlier runs left, unless it's missing, unreadable or for a different source.
+  void load(Path path) {
+    List<String> lines;
+    try {
+      lines = Files.readAllLines(path, StandardCharsets.UTF_8);
+    } catch (IOException e) {
+      return;
+    }
+    if (lines.size() < 2 || !lines.get(0).equals(HEADER) || !lines.get(1).equals("hash " + hash)) return;
+
+    try {
+      for (String line : lines.subList(2, lines.size())) {
+        String[] fields = line.split(" ");
+        if (fields.length != 4 || !fields[0].equals("call")) throw new IllegalArgumentException(line);
+        loadedCalls.put(Integer.parseInt(fields[1]), Long.parseLong(fields[3]));
+      }
+    } catch (IllegalArgumentException e) {
+      // a damaged profile is as good as none.
+      loadedCalls.clear();
+    }
+  }
+
+  // compiles the lazy bodies of the functions that earlier runs called. a body with errors is left alone, and
+  // its errors are reported when it's called, as they would be without a profile.
+  void apply(Interpreter interpreter) {
+    for (Map.Entry<Expr.Function, Token> function : functionNames.entrySet()) {
+      LazyFunctionBody lazyBody = function.getKey().lazyBody;
+      if (lazyBody == null || lazyBody.isCompiled()) continue;
+      if (!loadedCalls.containsKey(tokenIndices.get(function.getValue()))) continue;
+
+      try {
+        lazyBody.compile(function.getKey(), interpreter, SILENT);
+      } catch (RuntimeError error) {
+      }
+    }
+  }
+
+  // writes this run's profile on top of the loaded one.
+  void store(Path path) {
+    for (Map.Entry<Expr.Function, long[]> call : calls.entrySet()) {
+      Integer index = tokenIndices.get(functionNames.get(call.getKey()));
+      if (index != null) loadedCalls.merge(index, call.getValue()[0], Long::sum);
+    }
+
+    List<String> lines = new ArrayList<>();
+    lines.add(HEADER);
+    lines.add("hash " + hash);
+    Map<Integer, Token> tokens = new TreeMap<>();
+    for (Map.Entry<Token, Integer> token : tokenIndices.entrySet()) {
+      tokens.put(token.getValue(), token.getKey());
+    }
+    for (Map.Entry<Integer, Long> call : loadedCalls.entrySet()) {
+      lines.add("call " + call.getKey() + " " + site(tokens, call.getKey()) + " " + call.getValue());
+    }
+
+    // note: written next to the target and moved into place, like ScriptCache does.
+    Path temp = null;
+    try {
+      temp = Files.createTempFile(path.toAbsolutePath().getParent(), path.getFileName().toString(), ".tmp");
+      try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+        for (String line : lines) {
+          writer.write(line);
+          writer.newLine();
+        }
+      }
+      Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    } catch (IOException e) {
+      try {
+        if (temp != null) Files.deleteIfExists(temp);
+      } catch (IOException ignored) {
+      }
+    }
+  }
+
+  // "<lexeme>@<line>", to make the file readable. not read back.
+  private static String site(Map<Integer, Token> tokens, int index) {
+    Token token = tokens.get(index);
+    return token == null ? "?" : token.lexeme + "@" + token.line;
+  }
+}
@@ -0,0 +1,12 @@
+package com.craftinginterpreters.lox;
+
+// the output of variable resolution. the Resolver "exports" one of these to the Interpreter for each var access.
+//
+// distance: # of scopes between this var access and the innermost scope
+// slot      : position of variable's declaration in its scope. used for an optimization
+//           (fast runtime lookups via array indexing rather than var name in map).
+//
+// note: this is a little tricky. but you should be able to picture (distance, slot) being sufficient to resolve a
+// variable access to it's definition. as long as both resolver and interpreter (via environment) 1. define variables
+// in the same sequential order and 2. scopes correspond to environments, the indices will match up.
+record ResolvedVarInfo(int distance, int slot) {}
@@ -5,19 +5,11 @@ import java.util.List;
 import java.util.Map;
 import java.util.Stack;
 
-// the output of variable resolution. the Resolver "exports" one of these to the Interpreter for each var access.
-//
-// distance: # of scopes between this var access and the innermost scope
-// slot      : position of variable's declaration in its scope. used for an optimization
-//           (fast runtime lookups via array indexing rather than var name in map).
-//
-// note: this is a little tricky. but you should be able to picture (distance, slot) being sufficient to resolve a
-// variable access to it's definition. as long as both resolver and interpreter (via environment) 1. define variables
-// in the same sequential order and 2. scopes correspond to environments, the indices will match up.
-record ResolvedVarInfo(int distance, int slot) {}
-
 class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
-  private final Interpreter interpreter;
+  // where resolutions go. usually an Interpreter's, but it's only program state, so it can be filled before any
+  // interpreter exists (see LoxEngine).
+  private final Map<Expr, ResolvedVarInfo> locals;
+  private final ErrorReporter reporter;
   private final Stack<Map<String, Variable>> scopes = new Stack<Map<String, Variable>>();
   private FunctionType currentFunction = FunctionType.NONE;
   private ClassType currentClass = ClassType.NONE;
@@ -53,7 +45,16 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
   }
 
   Resolver(Interpreter interpreter) {
-    this.interpreter = interpreter;
+    this(interpreter, Lox.reporter);
+  }
+
+  Resolver(Interpreter interpreter, ErrorReporter reporter) {
+    this(interpreter.locals(), reporter);
+  }
+
+  Resolver(Map<Expr, ResolvedVarInfo> locals, ErrorReporter reporter) {
+    this.locals = locals;
+    this.reporter = reporter;
   }
 
   void resolve(List<Stmt> statements) {
@@ -84,14 +85,7 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
     // it in a closure. the scope we create here corresponds to that closure/env.
     // see book 12.6 for a great explanation.
 
-    // scopes.peek().put("this", true);
-    // note: book does above, perhaps to avoid defining a Token. for me it's easiest to just dummy the
-    // token as below. should be fine.
-    Token thiz = new Token(TokenType.THIS, "this", null, -1);
-    declare(thiz);
-    define(thiz);
-    scopes.peek().get(thiz.lexeme).state = Variable.State.READ; // exempt from unused var check
-    // todo: above: understand why I need to mark this as read.
+    declareThis();
 
     for (Stmt.Function method : stmt.methods) {
       FunctionType declaration = FunctionType.METHOD;
@@ -147,12 +141,12 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
   @Override
   public Void visitReturnStmt(Stmt.Return stmt) {
     if (currentFunction == FunctionType.NONE) {
-      Lox.error(stmt.keyword, "Can't return from top-level code.");
+      reporter.error(stmt.keyword, "Can't return from top-level code.");
     }
 
     if (stmt.value != null) {
       if (currentFunction == FunctionType.INITIALIZER) {
-        Lox.error(stmt.keyword, "Can't return a value from an initializer.");
+        reporter.error(stmt.keyword, "Can't return a value from an initializer.");
       }
 
       resolve(stmt.value);
@@ -251,7 +245,7 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
   @Override
   public Void visitThisExpr(Expr.This expr) {
     if (currentClass == ClassType.NONE) {
-      Lox.error(expr.keyword, "Can't use 'this' outside of a class.");
+      reporter.error(expr.keyword, "Can't use 'this' outside of a class.");
       return null;
     }
 
@@ -270,7 +264,7 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
     if (!scopes.isEmpty() &&
         scopes.peek().containsKey(expr.name.lexeme) &&
         scopes.peek().get(expr.name.lexeme).state == Variable.State.DECLARED) {
-      Lox.error(expr.name,
+      reporter.error(expr.name,
           "Can't read local variable in its own initializer.");
     }
 
@@ -279,11 +273,78 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
   }
 
   private void resolve(Stmt stmt) {
-    stmt.accept(this);
+    if (Interpreter.PATTERN_DISPATCH) {
+      dispatch(stmt);
+    } else {
+      stmt.accept(this);
+    }
   }
 
   void resolve(Expr expr) {
-    expr.accept(this);
+    if (Interpreter.PATTERN_DISPATCH) {
+      dispatch(expr);
+    } else {
+      expr.accept(this);
+    }
+  }
+
+  // see Interpreter.PATTERN_DISPATCH.
+  private void dispatch(Expr expr) {
+    if (expr instanceof Expr.Variable variable) {
+      visitVariableExpr(variable);
+    } else if (expr instanceof Expr.Literal literal) {
+      visitLiteralExpr(literal);
+    } else if (expr instanceof Expr.Binary binary) {
+      visitBinaryExpr(binary);
+    } else if (expr instanceof Expr.Call call) {
+      visitCallExpr(call);
+    } else if (expr instanceof Expr.Assign assign) {
+      visitAssignExpr(assign);
+    } else if (expr instanceof Expr.Get get) {
+      visitGetExpr(get);
+    } else if (expr instanceof Expr.Logical logical) {
+      visitLogicalExpr(logical);
+    } else if (expr instanceof Expr.Grouping grouping) {
+      visitGroupingExpr(grouping);
+    } else if (expr instanceof Expr.This thisExpr) {
+      visitThisExpr(thisExpr);
+    } else if (expr instanceof Expr.Unary unary) {
+      visitUnaryExpr(unary);
+    } else if (expr instanceof Expr.Set set) {
+      visitSetExpr(set);
+    } else if (expr instanceof Expr.Conditional conditional) {
+      visitConditionalExpr(conditional);
+    } else if (expr instanceof Expr.Function function) {
+      visitFunctionExpr(function);
+    } else {
+      throw new RuntimeException("Internal error: unhandled expression " + expr.getClass());
+    }
+  }
+
+  private void dispatch(Stmt stmt) {
+    if (stmt instanceof Stmt.Expression expression) {
+      visitExpressionStmt(expression);
+    } else if (stmt instanceof Stmt.If ifStmt) {
+      visitIfStmt(ifStmt);
+    } else if (stmt instanceof Stmt.Return returnStmt) {
+      visitReturnStmt(returnStmt);
+    } else if (stmt instanceof Stmt.Var var) {
+      visitVarStmt(var);
+    } else if (stmt instanceof Stmt.Block block) {
+      visitBlockStmt(block);
+    } else if (stmt instanceof Stmt.While whileStmt) {
+      visitWhileStmt(whileStmt);
+    } else if (stmt instanceof Stmt.Print print) {
+      visitPrintStmt(print);
+    } else if (stmt instanceof Stmt.Function function) {
+      visitFunctionStmt(function);
+    } else if (stmt instanceof Stmt.Class classStmt) {
+      visitClassStmt(classStmt);
+    } else if (stmt instanceof Stmt.Break breakStmt) {
+      visitBreakStmt(breakStmt);
+    } else {
+      throw new RuntimeException("Internal error: unhandled statement " + stmt.getClass());
+    }
   }
 
   private void beginScope() {
@@ -295,7 +356,7 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 
     for (Map.Entry<String, Variable> entry : scope.entrySet()) {
       if (entry.getValue().state == Variable.State.DEFINED) {
-        Lox.error(entry.getValue().name, "Local variable is not used.");
+        reporter.error(entry.getValue().name, "Local variable is not used.");
       }
     }
   }
@@ -305,7 +366,7 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 
     Map<String, Variable> scope = scopes.peek();
     if (scope.containsKey(name.lexeme)) {
-      Lox.error(name, "Already a variable with this name in this scope.");
+      reporter.error(name, "Already a variable with this name in this scope.");
     }
     scope.put(name.lexeme, new Variable(name, Variable.State.DECLARED, scope.size()));
   }
@@ -320,7 +381,7 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
       Variable v = scopes.get(i).get(name.lexeme);
       if (v != null) {
         int distance = scopes.size() - 1 - i;
-        interpreter.resolve(expr, new ResolvedVarInfo(distance, v.slot));
+        locals.put(expr, new ResolvedVarInfo(distance, v.slot));
 
         // Mark it as read
         if (isRead) {
@@ -333,7 +394,41 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
     // Not found. Assume it is global.
   }
 
+  private void declareThis() {
+    // scopes.peek().put("this", true);
+    // note: book does above, perhaps to avoid defining a Token. for me it's easiest to just dummy the
+    // token as below. should be fine.
+    Token thiz = new Token(TokenType.THIS, "this", null, -1);
+    declare(thiz);
+    define(thiz);
+    scopes.peek().get(thiz.lexeme).state = Variable.State.READ; // exempt from unused var check
+    // todo: above: understand why I need to mark this as read.
+  }
+
+  // entry point for bodies parsed lazily on first call (see LazyFunctionBody). those functions are always
+  // declared at the top level, so the only scope to recreate is the one binding 'this' around methods.
+  void resolveLazyFunction(Expr.Function function, boolean isMethod, boolean isInitializer) {
+    if (!isMethod) {
+      resolveFunctionBody(function, FunctionType.FUNCTION);
+      return;
+    }
+
+    currentClass = ClassType.CLASS;
+    beginScope();
+    declareThis();
+    resolveFunctionBody(function, isInitializer ? FunctionType.INITIALIZER : FunctionType.METHOD);
+    endScope();
+    currentClass = ClassType.NONE;
+  }
+
   private void resolveFunction(Expr.Function expr, FunctionType type) {
+    // not parsed yet. it gets resolved on first call instead, see resolveLazyFunction().
+    if (expr.lazyBody != null && !expr.lazyBody.isCompiled()) return;
+
+    resolveFunctionBody(expr, type);
+  }
+
+  private void resolveFunctionBody(Expr.Function expr, FunctionType type) {
     FunctionType enclosingFunction = currentFunction;
     currentFunction = type;
 
@@ -0,0 +1,161 @@
+package com.craftinginterpreters.lox;
+
+import java.io.PrintStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+// where one run's time and memory went (jlox --stats[=json] script): wall time, CPU time and bytes allocated
+// per phase, from the running thread's ThreadMXBean counters, plus the token and AST node counts, the deepest
+// the interpreter's scopes nested, and the collections the GC made meanwhile. printed as text or as one JSON
+// object, for CI to pick up.
+final class RunStats {
+  private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+  private final long[] wallNanos = new long[PhaseTimer.Phase.values().length];
+  private final long[] cpuNanos = new long[wallNanos.length];
+  private final long[] allocatedBytes = new long[wallNanos.length];
+
+  private int tokens = 0;
+  private List<Stmt> program = List.of();
+  private int scopeDepth = 0;
+  private int peakScopeDepth = 0;
+
+  private final long started = System.nanoTime();
+  private final long gcCountBefore = gcCount();
+  private final long gcMillisBefore = gcMillis();
+
+  void phase(PhaseTimer.Phase phase, long wall, long cpu, long allocated) {
+    wallNanos[phase.ordinal()] += wall;
+    cpuNanos[phase.ordinal()] += cpu;
+    allocatedBytes[phase.ordinal()] += allocated;
+  }
+
+  void tokens(List<Token> tokens) {
+    this.tokens += tokens.size() - 1; // not EOF.
+  }
+
+  // counted when printed, by which time lazy bodies that ran have been parsed too.
+  void program(List<Stmt> statements) {
+    this.program = statements;
+  }
+
+  // around every scope (block or call) the interpreter runs in.
+  void enterScope() {
+    if (++scopeDepth > peakScopeDepth) peakScopeDepth = scopeDepth;
+  }
+
+  void exitScope() {
+    scopeDepth--;
+  }
+
+  void print(PrintStream out, boolean json) {
+    long wall = System.nanoTime() - started;
+    long gcCount = gcCount() - gcCountBefore;
+    long gcMillis = gcMillis() - gcMillisBefore;
+    int nodes = count(program);
+
+    if (json) {
+      List<String> phases = new ArrayList<>();
+      for (PhaseTimer.Phase phase : PhaseTimer.Phase.values()) {
+        int i = phase.ordinal();
+        phases.add(String.format("\"%s\":{\"wall_ns\":%d,\"cpu_ns\":%d,\"allocated_bytes\":%d}", phase.label,
+                                 wallNanos[i], cpuNanos[i], allocatedBytes[i]));
+      }
+      out.println("{\"phases\":{" + String.join(",", phases) + "},\"wall_ns\":" + wall + ",\"tokens\":" + tokens +
+                  ",\"ast_nodes\":" + nodes + ",\"peak_scope_depth\":" + peakScopeDepth +
+                  ",\"gc\":{\"collections\":" + gcCount + ",\"time_ms\":" + gcMillis + "}}");
+      return;
+    }
+
+    out.println(String.format("%-10s %12s %12s %14s", "phase", "wall ms", "cpu ms", "allocated KB"));
+    for (PhaseTimer.Phase phase : PhaseTimer.Phase.values()) {
+      int i = phase.ordinal();
+      out.println(String.format(Locale.ROOT, "%-10s %12.3f %12.3f %14.1f", phase.label, wallNanos[i] / 1e6,
+                                cpuNanos[i] / 1e6, allocatedBytes[i] / 1024.0));
+    }
+    out.println(String.format(Locale.ROOT, "%-10s %12.3f", "total", wall / 1e6));
+    out.println("tokens: " + tokens + ", ast nodes: " + nodes + ", peak scope depth: " + peakScopeDepth);
+    out.println("gc: " + gcCount + " collections, " + gcMillis + " ms");
+  }
+
+  // this thread's CPU time so far, or 0 where the JVM doesn't measure it.
+  static long cpuNanos() {
+    return THREADS.isCurrentThreadCpuTimeSupported() ? THREADS.getCurrentThreadCpuTime() : 0;
+  }
+
+  // bytes this thread has allocated so far, or -1 where the JVM doesn't count them.
+  static long allocatedBytes() {
+    if (!(THREADS instanceof com.sun.management.ThreadMXBean)) return -1;
+    com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean)THREADS;
+    if (!threads.isThreadAllocatedMemorySupported() || !threads.isThreadAllocatedMemoryEnabled()) return -1;
+    return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+  }
+
+  private static long gcCount() {
+    long count = 0;
+    for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+      count += Math.max(gc.getCollectionCount(), 0);
+    }
+    return count;
+  }
+
+  private static long gcMillis() {
+    long millis = 0;
+    for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+      millis += Math.max(gc.getCollectionTime(), 0);
+    }
+    return millis;
+  }
+
+  // nodes in the tree, counting lazy function bodies only once they're parsed.
+  private static int count(Stmt stmt) {
+    if (stmt == null) return 0;
+    if (stmt instanceof Stmt.Block block) return 1 + count(block.statements);
+    if (stmt instanceof Stmt.Class classStmt) {
+      int count = 1;
+      for (Stmt.Function method : classStmt.methods) count += count(method);
+      return count;
+    }
+    if (stmt instanceof Stmt.Expression expression) return 1 + count(expression.expression);
+    if (stmt instanceof Stmt.Function function) return 1 + count(function.function);
+    if (stmt instanceof Stmt.If ifStmt) {
+      return 1 + count(ifStmt.condition) + count(ifStmt.thenBranch) + count(ifStmt.elseBranch);
+    }
+    if (stmt instanceof Stmt.Print print) return 1 + count(print.expression);
+    if (stmt instanceof Stmt.Return returnStmt) return 1 + count(returnStmt.value);
+    if (stmt instanceof Stmt.Var var) return 1 + count(var.initializer);
+    if (stmt instanceof Stmt.While whileStmt) return 1 + count(whileStmt.condition) + count(whileStmt.body);
+    return 1; // Break.
+  }
+
+  private static int count(List<Stmt> statements) {
+    int count = 0;
+    for (Stmt statement : statements) count += count(statement);
+    return count;
+  }
+
+  private static int count(Expr expr) {
+    if (expr == null) return 0;
+    if (expr instanceof Expr.Assign assign) return 1 + count(assign.value);
+    if (expr instanceof Expr.Binary binary) return 1 + count(binary.left) + count(binary.right);
+    if (expr instanceof Expr.Call call) {
+      int count = 1 + count(call.callee);
+      for (Expr argument : call.arguments) count += count(argument);
+      return count;
+    }
+    if (expr instanceof Expr.Conditional conditional) {
+      return 1 + count(conditional.conditional) + count(conditional.thenBranch) + count(conditional.elseBranch);
+    }
+    if (expr instanceof Expr.Function function) return 1 + count(function.body);
+    if (expr instanceof Expr.Get get) return 1 + count(get.object);
+    if (expr instanceof Expr.Grouping grouping) return 1 + count(grouping.expression);
+    if (expr instanceof Expr.Logical logical) return 1 + count(logical.left) + count(logical.right);
+    if (expr instanceof Expr.Set set) return 1 + count(set.object) + count(set.value);
+    if (expr instanceof Expr.Unary unary) return 1 + count(unary.right);
+    return 1; // Literal, This, Variable.
+  }
+}
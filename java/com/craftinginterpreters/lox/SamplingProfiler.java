@@ -0,0 +1,125 @@
+package com.craftinginterpreters.lox;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+// sampling profiler (jlox --sample[=HZ] script, 100 Hz by default). the interpreter keeps a stack of the Lox
+// calls it's in (pushed and popped at the call site, Interpreter.visitCallExpr), and a background thread looks
+// at it `rate` times a second. nothing is timed, so tight code runs at close to its normal speed, unlike with
+// CallProfiler.
+//
+// write() produces collapsed stacks, one line per distinct stack with the number of samples that saw it:
+//   <script>;fib (line 1);fib (line 1) 42
+// which flamegraph.pl (or speedscope, etc.) turns into a flame graph. frames are named like in CallProfiler.
+class SamplingProfiler {
+  // owned by the interpreter's thread. the sampler only reads frames below `depth`, which are written before
+  // `depth` is raised past them (and a grown array is published the same way). depth is written with release
+  // and read with acquire semantics, which is all that takes. a volatile write would be a full fence per call.
+  private LoxCallable[] frames = new LoxCallable[64];
+  private int depth = 0;
+  private static final VarHandle DEPTH;
+  static {
+    try {
+      DEPTH = MethodHandles.lookup().findVarHandle(SamplingProfiler.class, "depth", int.class);
+    } catch (ReflectiveOperationException e) {
+      throw new ExceptionInInitializerError(e);
+    }
+  }
+
+  // owned by the sampler thread until stop() has joined it.
+  private final Map<List<Object>, long[]> stacks = new HashMap<>();
+  private final Map<Object, LoxCallable> callables = new HashMap<>();
+
+  private final Thread thread;
+  private volatile boolean running = true;
+
+  SamplingProfiler(int rate) {
+    long interval = TimeUnit.SECONDS.toNanos(1) / rate;
+    thread = new Thread(() -> {
+      while (running) {
+        LockSupport.parkNanos(interval);
+        sample();
+      }
+    }, "lox-sampler");
+    thread.setDaemon(true);
+  }
+
+  void start() {
+    thread.start();
+  }
+
+  Object call(Interpreter interpreter, LoxCallable function, List<Object> arguments) {
+    int top = depth;
+    if (top == frames.length) frames = Arrays.copyOf(frames, top * 2);
+    frames[top] = function;
+    DEPTH.setRelease(this, top + 1);
+    try {
+      return function.call(interpreter, arguments);
+    } finally {
+      DEPTH.setRelease(this, top);
+    }
+  }
+
+  private void sample() {
+    // note: depth first, so the array read after it holds at least that many frames.
+    int size = (int)DEPTH.getAcquire(this);
+    LoxCallable[] snapshot = frames;
+
+    List<Object> stack = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      LoxCallable function = snapshot[i];
+      Object key = CallProfiler.key(function);
+      callables.putIfAbsent(key, function);
+      stack.add(key);
+    }
+    stacks.computeIfAbsent(stack, s -> new long[1])[0]++;
+  }
+
+  void stop() {
+    running = false;
+    LockSupport.unpark(thread);
+    try {
+      thread.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  // after stop(). sorted, so runs of the same script are easy to diff.
+  void write(Interpreter interpreter, Path path) throws IOException {
+    Map<Object, String> labels = new HashMap<>();
+    for (Map.Entry<Object, LoxCallable> callable : callables.entrySet()) {
+      labels.put(callable.getKey(), CallProfiler.label(interpreter, callable.getValue()));
+    }
+
+    Map<String, Long> lines = new TreeMap<>();
+    for (Map.Entry<List<Object>, long[]> stack : stacks.entrySet()) {
+      StringBuilder line = new StringBuilder("<script>");
+      for (Object key : stack.getKey()) {
+        // note: ';' separates frames, so it can't be in a name.
+        line.append(';').append(labels.get(key).replace(';', ','));
+      }
+      lines.merge(line.toString(), stack.getValue()[0], Long::sum);
+    }
+
+    try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+      for (Map.Entry<String, Long> line : lines.entrySet()) {
+        writer.write(line.getKey() + " " + line.getValue());
+        writer.newLine();
+      }
+    }
+  }
+}
@@ -1,6 +1,7 @@
 package com.craftinginterpreters.lox;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -11,7 +12,16 @@ class Scanner {
     private final List<Token> tokens = new ArrayList<>();
     private int start = 0;
     private int current = 0;
-    private int line = 1;
+    private int line;
+    private final ErrorReporter reporter;
+
+    // more source follows this one (see TokenStream), so a string running off the end isn't unterminated yet.
+    // scanning stops in front of it instead and rest() hands it back.
+    private final boolean partial;
+    private boolean stopped = false;
+
+    // end offset of each token in `source`, so IncrementalFrontEnd can map declarations back to source ranges.
+    private int[] tokenEnds = new int[64];
 
     private static final Map<String, TokenType> keywords;
 
@@ -37,19 +47,56 @@ class Scanner {
   }
 
     Scanner(String source) {
+        this(source, 1);
+    }
+
+    // for scanning a fragment of a larger source that starts on the given line.
+    Scanner(String source, int line) {
+        this(source, line, Lox.reporter);
+    }
+
+    Scanner(String source, int line, ErrorReporter reporter) {
+        this(source, line, reporter, false);
+    }
+
+    Scanner(String source, int line, ErrorReporter reporter, boolean partial) {
         this.source = source;
+        this.line = line;
+        this.reporter = reporter;
+        this.partial = partial;
     }
 
     List<Token> scanTokens() {
         while (!isAtEnd()) {
             // We are at the beginning of the next lexeme.
             start = current;
+            int startLine = line;
             scanToken();
+            if (stopped) {
+                current = start;
+                line = startLine;
+                return tokens;
+            }
         }
-        tokens.add(new Token(EOF, "", null, line));
+        if (partial) return tokens;
+        start = current;
+        addToken(EOF);
         return tokens;
     }
 
+    // after a partial scan: the source that's left for the next one, and the line it starts on.
+    String rest() {
+        return source.substring(current);
+    }
+
+    int line() {
+        return line;
+    }
+
+    int tokenEnd(int index) {
+        return tokenEnds[index];
+    }
+
     private boolean isAtEnd() {
         return current >= source.length();
     }
@@ -135,7 +182,7 @@ class Scanner {
                 } else if (isAlpha(c)) {
                     identifier();
                 } else {
-                    Lox.error(line, "Unexpected character.");
+                    reporter.error(line, "Unexpected character.");
                 }
                 break;
         }
@@ -173,7 +220,11 @@ class Scanner {
         advance();
       }
       if (isAtEnd()) {
-        Lox.error(line, "Unterminated string.");
+        if (partial) {
+          stopped = true;
+          return;
+        }
+        reporter.error(line, "Unterminated string.");
         return;
       }
       // The closing ".
@@ -228,6 +279,11 @@ class Scanner {
     }
 
     private void addToken(TokenType type, Object literal) {
+      if (tokens.size() == tokenEnds.length) {
+        tokenEnds = Arrays.copyOf(tokenEnds, tokenEnds.length * 2);
+      }
+      tokenEnds[tokens.size()] = current;
+
       String text = source.substring(start, current);
       tokens.add(new Token(type, text, literal, line));
     }
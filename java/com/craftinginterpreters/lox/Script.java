@@ -0,0 +1,33 @@
+package com.craftinginterpreters.lox;
+
+import java.util.List;
+import java.util.Map;
+
+// a compiled program: its statements and their resolutions, or the diagnostics explaining why there are none.
+// immutable once LoxEngine.compile returns it, so one Script can be run any number of times, concurrently.
+public final class Script {
+  private final String source;
+  final List<Stmt> statements;
+  final Map<Expr, ResolvedVarInfo> locals;
+  private final List<Diagnostic> diagnostics;
+
+  Script(String source, List<Stmt> statements, Map<Expr, ResolvedVarInfo> locals, List<Diagnostic> diagnostics) {
+    this.source = source;
+    this.statements = List.copyOf(statements);
+    this.locals = Map.copyOf(locals);
+    this.diagnostics = List.copyOf(diagnostics);
+  }
+
+  public String source() {
+    return source;
+  }
+
+  // scan, parse and resolution errors. a script with any of these can't be run.
+  public List<Diagnostic> diagnostics() {
+    return diagnostics;
+  }
+
+  public boolean hasErrors() {
+    return !diagnostics.isEmpty();
+  }
+}
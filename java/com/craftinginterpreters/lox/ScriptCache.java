@@ -0,0 +1,244 @@
+package com.craftinginterpreters.lox;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.List;
+
+// on-disk cache of resolved programs (jlox --cache). a script that was scanned, parsed and resolved without
+// errors is stored as its FlatAst, resolved slots included, so later runs of the same script can skip the front
+// end and just decode it (see FlatAst.decode). files are named after a SHA-256 of the jlox build's fingerprint
+// and the source, so editing either one simply misses the cache instead of needing invalidation.
+//
+// file format (big-endian): magic, format version, the 32 byte fingerprint, then the statements list, then
+// nodes, lists, lineNodes and lines as an int count followed by the ints, then the constants as a count
+// followed by a tag byte and payload each.
+//
+// note: the cache is best effort. a file that can't be read or written, or that doesn't check out, is a miss.
+class ScriptCache {
+  private static final int MAGIC = 0x4c4f5843; // "LOXC"
+
+  // bump when the layout above changes. changes to the node types change the fingerprint anyway.
+  private static final int VERSION = 1;
+
+  private static final byte NIL = 0;
+  private static final byte NUMBER = 1;
+  private static final byte STRING = 2;
+  private static final byte TRUE = 3;
+  private static final byte FALSE = 4;
+
+  private static byte[] fingerprint;
+
+  private final Path directory;
+
+  ScriptCache(Path directory) {
+    this.directory = directory;
+  }
+
+  // $JLOX_CACHE_DIR, else $XDG_CACHE_HOME/jlox, else ~/.cache/jlox.
+  static Path defaultDirectory() {
+    String dir = System.getenv("JLOX_CACHE_DIR");
+    if (dir != null && !dir.isEmpty()) return Paths.get(dir);
+
+    String cacheHome = System.getenv("XDG_CACHE_HOME");
+    if (cacheHome != null && !cacheHome.isEmpty()) return Paths.get(cacheHome, "jlox");
+    return Paths.get(System.getProperty("user.home"), ".cache", "jlox");
+  }
+
+  // returns the cached statements with their resolutions registered in the interpreter, or null on a miss.
+  List<Stmt> load(String source, Interpreter interpreter) {
+    Path path = path(source);
+    if (path == null || !Files.isRegularFile(path)) return null;
+
+    FlatAst ast;
+    try (FileChannel channel = FileChannel.open(path)) {
+      ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      ast = read(buffer);
+    } catch (IOException | RuntimeException e) {
+      return null;
+    }
+    if (ast == null) return null;
+
+    return ast.decode(interpreter);
+  }
+
+  // caches statements that were resolved into the interpreter without errors.
+  void store(String source, List<Stmt> statements, Interpreter interpreter) {
+    Path path = path(source);
+    if (path == null) return;
+
+    FlatAst ast = FlatAst.encode(statements, interpreter);
+    Path temp = null;
+    try {
+      Files.createDirectories(directory);
+      // written next to the target and moved into place, so concurrent runs never see a partial file.
+      temp = Files.createTempFile(directory, path.getFileName().toString(), ".tmp");
+      try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+        write(ast, out);
+      }
+      Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    } catch (IOException e) {
+      try {
+        if (temp != null) Files.deleteIfExists(temp);
+      } catch (IOException ignored) {
+      }
+    }
+  }
+
+  private Path path(String source) {
+    byte[] fingerprint = fingerprint();
+    if (fingerprint == null) return null;
+
+    MessageDigest digest = sha256();
+    digest.update(fingerprint);
+    digest.update(source.getBytes(StandardCharsets.UTF_8));
+    return directory.resolve(hex(digest.digest()) + ".loxc");
+  }
+
+  private static void write(FlatAst ast, DataOutputStream out) throws IOException {
+    out.writeInt(MAGIC);
+    out.writeInt(VERSION);
+    out.write(fingerprint());
+
+    out.writeInt(ast.statements);
+    writeInts(out, ast.nodes);
+    writeInts(out, ast.lists);
+    writeInts(out, ast.lineNodes);
+    writeInts(out, ast.lines);
+
+    out.writeInt(ast.constants.length);
+    for (Object constant : ast.constants) {
+      if (constant == null) {
+        out.writeByte(NIL);
+      } else if (constant instanceof Double) {
+        out.writeByte(NUMBER);
+        out.writeDouble((double)constant);
+      } else if (constant instanceof String) {
+        byte[] bytes = ((String)constant).getBytes(StandardCharsets.UTF_8);
+        out.writeByte(STRING);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+      } else if (constant instanceof Boolean) {
+        out.writeByte((boolean)constant ? TRUE : FALSE);
+      } else {
+        throw new IOException("Can't cache constant " + constant);
+      }
+    }
+  }
+
+  private static void writeInts(DataOutputStream out, int[] ints) throws IOException {
+    out.writeInt(ints.length);
+    for (int i : ints) {
+      out.writeInt(i);
+    }
+  }
+
+  private static FlatAst read(ByteBuffer buffer) {
+    if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) return null;
+
+    byte[] stored = new byte[32];
+    buffer.get(stored);
+    if (!MessageDigest.isEqual(stored, fingerprint())) return null;
+
+    int statements = buffer.getInt();
+    int[] nodes = readInts(buffer);
+    int[] lists = readInts(buffer);
+    int[] lineNodes = readInts(buffer);
+    int[] lines = readInts(buffer);
+
+    Object[] constants = new Object[buffer.getInt()];
+    for (int i = 0; i < constants.length; i++) {
+      byte tag = buffer.get();
+      switch (tag) {
+        case NIL:
+          break;
+        case NUMBER:
+          constants[i] = buffer.getDouble();
+          break;
+        case STRING: {
+          byte[] bytes = new byte[buffer.getInt()];
+          buffer.get(bytes);
+          constants[i] = new String(bytes, StandardCharsets.UTF_8);
+          break;
+        }
+        case TRUE:
+          constants[i] = true;
+          break;
+        case FALSE:
+          constants[i] = false;
+          break;
+        default:
+          return null;
+      }
+    }
+
+    return new FlatAst(nodes, lists, constants, statements, lineNodes, lines);
+  }
+
+  private static int[] readInts(ByteBuffer buffer) {
+    int[] ints = new int[buffer.getInt()];
+    IntBuffer view = buffer.asIntBuffer();
+    view.get(ints);
+    buffer.position(buffer.position() + 4 * ints.length);
+    return ints;
+  }
+
+  // SHA-256 over the class files jlox runs from (or its jar), computed once per run. null if they can't be
+  // located, which disables the cache rather than risking stale entries.
+  private static synchronized byte[] fingerprint() {
+    if (fingerprint != null) return fingerprint;
+
+    try {
+      Path location = Paths.get(Lox.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+      MessageDigest digest = sha256();
+
+      if (Files.isDirectory(location)) {
+        // note: plain File listing, since streams and lambdas cost more JVM startup than the hashing.
+        File[] files = location.resolve(Lox.class.getPackageName().replace('.', '/')).toFile().listFiles();
+        if (files == null) return null;
+        Arrays.sort(files);
+        for (File file : files) {
+          if (!file.getName().endsWith(".class")) continue;
+          digest.update(file.getName().getBytes(StandardCharsets.UTF_8));
+          digest.update(Files.readAllBytes(file.toPath()));
+        }
+      } else {
+        digest.update(Files.readAllBytes(location));
+      }
+
+      fingerprint = digest.digest();
+    } catch (IOException | URISyntaxException | RuntimeException e) {
+      return null;
+    }
+    return fingerprint;
+  }
+
+  static MessageDigest sha256() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new RuntimeException(e); // every JRE has SHA-256.
+    }
+  }
+
+  static String hex(byte[] bytes) {
+    StringBuilder builder = new StringBuilder();
+    for (byte b : bytes) {
+      builder.append(String.format("%02x", b));
+    }
+    return builder.toString();
+  }
+}
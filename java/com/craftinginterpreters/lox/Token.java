@@ -4,7 +4,9 @@ class Token {
     final TokenType type;
     final String lexeme;
     final Object literal;
-    final int line;
+    // note: not final, IncrementalFrontEnd moves the tokens of a declaration it reuses below an edit that added or
+    // removed lines.
+    int line;
 
     Token(TokenType type, String lexeme, Object literal, int line) {
         this.type = type;
@@ -0,0 +1,82 @@
+package com.craftinginterpreters.lox;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+
+// the tokens of a source read from a Reader, scanned a chunk at a time as the Parser asks for them, for streaming
+// runs (see Lox.runStream). indices are positions in the whole source, but only the tokens from the last
+// discardBefore() on are kept, so memory stays bounded however long the source is.
+//
+// chunks are cut after a newline, where no token but a string can continue. a string that does is carried over
+// to the next chunk (see Scanner.rest).
+class TokenStream extends AbstractList<Token> {
+  private static final int CHUNK_SIZE = 64 * 1024;
+
+  private final Reader reader;
+  private final ErrorReporter reporter;
+  private final List<Token> window = new ArrayList<>();
+  private int base = 0;
+
+  private final char[] buffer = new char[CHUNK_SIZE];
+  private final StringBuilder pending = new StringBuilder();
+  private int line = 1;
+  private boolean done = false;
+
+  TokenStream(Reader reader, ErrorReporter reporter) {
+    this.reader = reader;
+    this.reporter = reporter;
+  }
+
+  @Override
+  public Token get(int index) {
+    while (index - base >= window.size() && !done) {
+      scanChunk();
+    }
+    // note: the parser never looks past EOF, but just in case, everything past it is EOF.
+    if (index - base >= window.size()) return window.get(window.size() - 1);
+    return window.get(index - base);
+  }
+
+  // the tokens scanned so far, counting discarded ones.
+  @Override
+  public int size() {
+    return base + window.size();
+  }
+
+  void discardBefore(int index) {
+    if (index <= base) return;
+    window.subList(0, index - base).clear();
+    base = index;
+  }
+
+  private void scanChunk() {
+    int read;
+    try {
+      read = reader.read(buffer);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+
+    String source;
+    if (read == -1) {
+      source = pending.toString();
+      pending.setLength(0);
+      done = true;
+    } else {
+      pending.append(buffer, 0, read);
+      int newline = pending.lastIndexOf("\n");
+      if (newline == -1) return; // one long line so far, keep reading.
+      source = pending.substring(0, newline + 1);
+      pending.delete(0, newline + 1);
+    }
+
+    Scanner scanner = new Scanner(source, line, reporter, !done);
+    window.addAll(scanner.scanTokens());
+    line = scanner.line();
+    if (!done) pending.insert(0, scanner.rest());
+  }
+}
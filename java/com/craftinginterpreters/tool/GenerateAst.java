@@ -2,22 +2,31 @@ package com.craftinginterpreters.tool;
 
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
 public class GenerateAst {
+  // --sealed makes Expr and Stmt sealed with final subclasses, so the hierarchies are closed for instanceof/switch
+  // dispatch (see Interpreter.PATTERN_DISPATCH). field access stays the same, so nothing else has to change.
+  private static boolean sealed = false;
+
   public static void main(String[] args) throws IOException {
+    if (args.length == 2 && args[0].equals("--sealed")) {
+      sealed = true;
+      args = Arrays.copyOfRange(args, 1, 2);
+    }
     if (args.length != 1) {
-      System.err.println("Usage: generate_ast <output directory>");
+      System.err.println("Usage: generate_ast [--sealed] <output directory>");
       System.exit(64);
     }
     String outputDir = args[0];
-    defineAst(outputDir, "Expr", Arrays.asList(
+    List<String> exprTypes = Arrays.asList(
         "Assign      : Token name, Expr value",
         "Binary      : Expr left, Token operator, Expr right",
         "Call        : Expr callee, Token paren, List<Expr> arguments",
         "Conditional : Expr conditional, Expr thenBranch, Expr elseBranch",
-        "Function    : List<Token> params, List<Stmt> body",
+        "Function    : Token start, List<Token> params, List<Stmt> body, LazyFunctionBody lazyBody",
         "Get         : Expr object, Token name",
         "Grouping    : Expr expression",
         "Literal     : Object value",
@@ -26,9 +35,9 @@ public class GenerateAst {
         "This        : Token keyword",
         "Unary       : Token operator, Expr right",
         "Variable    : Token name"
-    ));
+    );
 
-    defineAst(outputDir, "Stmt", Arrays.asList(
+    List<String> stmtTypes = Arrays.asList(
         "Block      : List<Stmt> statements",
         "Break      : ",
         "Class      : Token name, List<Stmt.Function> methods",
@@ -39,7 +48,11 @@ public class GenerateAst {
         "Return     : Token keyword, Expr value",
         "Var        : Token name, Expr initializer",
         "While      : Expr condition, Stmt body"
-    ));
+    );
+
+    defineAst(outputDir, "Expr", exprTypes);
+    defineAst(outputDir, "Stmt", stmtTypes);
+    defineFlatAst(outputDir, exprTypes, stmtTypes);
   }
 
   private static void defineAst(
@@ -52,7 +65,8 @@ public class GenerateAst {
     writer.println();
     writer.println("import java.util.List;");
     writer.println();
-    writer.println("abstract class " + baseName + " {");
+    // note: with no 'permits' clause, the permitted subclasses are the ones nested in this file.
+    writer.println((sealed ? "abstract sealed class " : "abstract class ") + baseName + " {");
 
     defineVisitor(writer, baseName, types);
 
@@ -87,7 +101,7 @@ public class GenerateAst {
   private static void defineType(
       PrintWriter writer, String baseName,
       String className, String fieldList) {
-    writer.println("  static class " + className + " extends " +
+    writer.println("  static " + (sealed ? "final " : "") + "class " + className + " extends " +
         baseName + " {");
 
     // Constructor.
@@ -123,4 +137,437 @@ public class GenerateAst {
 
     writer.println("  }");
   }
-}
\ No newline at end of file
+
+  // node types the Resolver resolves to a (distance, slot) pair. the flat encoding stores those inline.
+  private static final List<String> RESOLVED_TYPES = Arrays.asList("AssignExpr", "VariableExpr", "ThisExpr");
+
+  // operator tokens become one of these in the flat encoding, named after their TokenType.
+  private static final List<String> OPCODES = Arrays.asList(
+      "COMMA ,", "MINUS -", "PLUS +", "SLASH /", "STAR *", "BANG !", "BANG_EQUAL !=", "EQUAL_EQUAL ==",
+      "GREATER >", "GREATER_EQUAL >=", "LESS <", "LESS_EQUAL <=", "AND and", "OR or");
+
+  private static void defineFlatAst(
+      String outputDir, List<String> exprTypes, List<String> stmtTypes)
+      throws IOException {
+    String path = outputDir + "/FlatAst.java";
+    PrintWriter writer = new PrintWriter(path, "UTF-8");
+
+    List<String[]> types = new ArrayList<>();
+    for (String type : exprTypes) types.add(new String[] { "Expr", type });
+    for (String type : stmtTypes) types.add(new String[] { "Stmt", type });
+
+    writer.println("package com.craftinginterpreters.lox;");
+    writer.println();
+    writer.println("import java.util.ArrayList;");
+    writer.println("import java.util.Arrays;");
+    writer.println("import java.util.HashMap;");
+    writer.println("import java.util.List;");
+    writer.println("import java.util.Map;");
+    writer.println();
+    writer.println("// compact encoding of a resolved program, generated by GenerateAst from the same node definitions as");
+    writer.println("// Expr and Stmt. a node is a run of ints in `nodes`: its Kind, then one int per field. child nodes are");
+    writer.println("// offsets into `nodes` (-1 for null), lists are offsets into `lists` (a count followed by the elements),");
+    writer.println("// names and literal values are indices into `constants`, and operator tokens become an Opcode. variable");
+    writer.println("// accesses carry their resolved distance and slot inline (distance -1 for globals). source lines live in");
+    writer.println("// a side table, since they're only needed to report errors. see FlatInterpreter.");
+    writer.println("final class FlatAst {");
+
+    writer.println("  enum Kind {");
+    for (String[] type : types) {
+      writer.println("    " + constantName(className(type[1]) + type[0]) + ",");
+    }
+    writer.println("  }");
+    writer.println();
+    writer.println("  enum Opcode {");
+    for (int i = 0; i < OPCODES.size(); i++) {
+      String[] opcode = OPCODES.get(i).split(" ");
+      writer.println("    " + opcode[0] + "(\"" + opcode[1] + "\")" + (i == OPCODES.size() - 1 ? ";" : ","));
+    }
+    writer.println();
+    writer.println("    final String lexeme;");
+    writer.println();
+    writer.println("    Opcode(String lexeme) {");
+    writer.println("      this.lexeme = lexeme;");
+    writer.println("    }");
+    writer.println("  }");
+    writer.println();
+    writer.println("  static final Kind[] KINDS = Kind.values();");
+    writer.println("  static final Opcode[] OPCODES = Opcode.values();");
+
+    // Field offsets.
+    writer.println();
+    writer.println("  // field offsets, relative to the start of a node. offset 0 holds the node's Kind.");
+    for (String[] type : types) {
+      String prefix = constantName(className(type[1]) + type[0]);
+      int offset = 1;
+      for (String[] field : flatFields(type)) {
+        writer.println("  static final int " + prefix + "_" + constantName(field[1]) + " = " + offset++ + ";");
+      }
+    }
+
+    writer.println();
+    writer.println("  final int[] nodes;");
+    writer.println("  final int[] lists;");
+    writer.println("  final Object[] constants;");
+    writer.println("  final int statements;");
+    writer.println("  // node offsets and their lines, sorted by node. see line().");
+    writer.println("  final int[] lineNodes;");
+    writer.println("  final int[] lines;");
+    writer.println();
+    writer.println("  FlatAst(int[] nodes, int[] lists, Object[] constants, int statements, int[] lineNodes, int[] lines) {");
+    writer.println("    this.nodes = nodes;");
+    writer.println("    this.lists = lists;");
+    writer.println("    this.constants = constants;");
+    writer.println("    this.statements = statements;");
+    writer.println("    this.lineNodes = lineNodes;");
+    writer.println("    this.lines = lines;");
+    writer.println("  }");
+    writer.println();
+    writer.println("  private FlatAst(Encoder encoder, int statements) {");
+    writer.println("    this.nodes = Arrays.copyOf(encoder.nodes, encoder.nodeCount);");
+    writer.println("    this.lists = Arrays.copyOf(encoder.lists, encoder.listCount);");
+    writer.println("    this.constants = encoder.constants.toArray();");
+    writer.println("    this.statements = statements;");
+    writer.println("    this.lineNodes = Arrays.copyOf(encoder.lineNodes, encoder.lineCount);");
+    writer.println("    this.lines = Arrays.copyOf(encoder.lines, encoder.lineCount);");
+    writer.println("  }");
+    writer.println();
+    writer.println("  static FlatAst encode(List<Stmt> statements, Interpreter interpreter) {");
+    writer.println("    Encoder encoder = new Encoder(interpreter);");
+    writer.println("    return new FlatAst(encoder, encoder.stmts(statements));");
+    writer.println("  }");
+    writer.println();
+    writer.println("  // rebuilds the tree, registering each variable's resolution with the interpreter the way the Resolver");
+    writer.println("  // would. tokens get back their lexeme and line, which is all the Interpreter looks at.");
+    writer.println("  List<Stmt> decode(Interpreter interpreter) {");
+    writer.println("    return new Decoder(this, interpreter).stmts(statements, Stmt.class);");
+    writer.println("  }");
+    writer.println();
+    writer.println("  Kind kind(int node) {");
+    writer.println("    return KINDS[nodes[node]];");
+    writer.println("  }");
+    writer.println();
+    writer.println("  // line of the closest node at or before this one that came with a token.");
+    writer.println("  int line(int node) {");
+    writer.println("    int index = Arrays.binarySearch(lineNodes, node);");
+    writer.println("    if (index < 0) index = -index - 2;");
+    writer.println("    return index < 0 ? 0 : lines[index];");
+    writer.println("  }");
+    writer.println();
+    writer.println("  // approximate footprint of the encoding, excluding the constants themselves.");
+    writer.println("  long sizeInBytes() {");
+    writer.println("    return 4L * (nodes.length + lists.length + lineNodes.length + lines.length) +");
+    writer.println("           4L * constants.length;");
+    writer.println("  }");
+
+    defineFlatEncoder(writer, types);
+    defineFlatDecoder(writer, types);
+
+    writer.println("}");
+    writer.close();
+  }
+
+  private static void defineFlatEncoder(PrintWriter writer, List<String[]> types) {
+    writer.println();
+    writer.println("  private static final class Encoder implements Expr.Visitor<Integer>, Stmt.Visitor<Integer> {");
+    writer.println("    private final Interpreter interpreter;");
+    writer.println("    private int[] nodes = new int[1024];");
+    writer.println("    private int nodeCount = 0;");
+    writer.println("    private int[] lists = new int[256];");
+    writer.println("    private int listCount = 0;");
+    writer.println("    private final List<Object> constants = new ArrayList<>();");
+    writer.println("    private final Map<Object, Integer> constantIndices = new HashMap<>();");
+    writer.println("    private int[] lineNodes = new int[256];");
+    writer.println("    private int[] lines = new int[256];");
+    writer.println("    private int lineCount = 0;");
+    writer.println();
+    writer.println("    Encoder(Interpreter interpreter) {");
+    writer.println("      this.interpreter = interpreter;");
+    writer.println("    }");
+
+    for (String[] type : types) {
+      String baseName = type[0];
+      String className = className(type[1]);
+      String prefix = constantName(className + baseName);
+      List<String[]> fields = flatFields(type);
+
+      writer.println();
+      writer.println("    @Override");
+      writer.println("    public Integer visit" + className + baseName + "(" + baseName + "." +
+          className + " " + baseName.toLowerCase() + ") {");
+      writer.println("      int node = node(Kind." + prefix + ", " + fields.size() + ");");
+
+      // recorded before encoding any children, which keeps the line table sorted by node.
+      for (String[] field : fields) {
+        if (field[0].equals("Token")) {
+          writer.println("      line(node, " + baseName.toLowerCase() + "." + field[1] + ");");
+          break;
+        }
+      }
+
+      for (String[] field : fields) {
+        String fieldType = field[0];
+        String name = field[1];
+        String slot = "node + " + prefix + "_" + constantName(name);
+        String value = baseName.toLowerCase() + "." + name;
+
+        if (name.equals("distance")) {
+          writer.println("      ResolvedVarInfo info = interpreter.resolution(" + baseName.toLowerCase() + ");");
+          writer.println("      set(" + slot + ", info == null ? -1 : info.distance());");
+        } else if (name.equals("slot")) {
+          writer.println("      set(" + slot + ", info == null ? -1 : info.slot());");
+        } else if (fieldType.equals("Token")) {
+          if (name.equals("operator")) {
+            writer.println("      set(" + slot + ", Opcode.valueOf(" + value + ".type.name()).ordinal());");
+          } else {
+            writer.println("      set(" + slot + ", constant(" + value + ".lexeme));");
+          }
+        } else if (fieldType.equals("Object")) {
+          writer.println("      set(" + slot + ", constant(" + value + "));");
+        } else if (fieldType.equals("List<Token>")) {
+          writer.println("      set(" + slot + ", tokens(" + value + "));");
+        } else if (fieldType.startsWith("List<Expr")) {
+          writer.println("      set(" + slot + ", exprs(" + value + "));");
+        } else if (fieldType.startsWith("List<Stmt")) {
+          writer.println("      set(" + slot + ", stmts(" + value + "));");
+        } else if (fieldType.startsWith("Expr")) {
+          writer.println("      set(" + slot + ", expr(" + value + "));");
+        } else {
+          writer.println("      set(" + slot + ", stmt(" + value + "));");
+        }
+      }
+
+      writer.println("      return node;");
+      writer.println("    }");
+    }
+
+    writer.println();
+    writer.println("    private int node(Kind kind, int fields) {");
+    writer.println("      if (nodeCount + fields + 1 > nodes.length) {");
+    writer.println("        nodes = Arrays.copyOf(nodes, Math.max(nodes.length * 2, nodeCount + fields + 1));");
+    writer.println("      }");
+    writer.println("      int node = nodeCount;");
+    writer.println("      nodes[node] = kind.ordinal();");
+    writer.println("      nodeCount += fields + 1;");
+    writer.println("      return node;");
+    writer.println("    }");
+    writer.println();
+    writer.println("    // note: a method rather than `nodes[i] = expr(...)`, since encoding the child may reallocate `nodes`.");
+    writer.println("    private void set(int index, int value) {");
+    writer.println("      nodes[index] = value;");
+    writer.println("    }");
+    writer.println();
+    writer.println("    private void line(int node, Token token) {");
+    writer.println("      if (lineCount == lines.length) {");
+    writer.println("        lineNodes = Arrays.copyOf(lineNodes, lineCount * 2);");
+    writer.println("        lines = Arrays.copyOf(lines, lineCount * 2);");
+    writer.println("      }");
+    writer.println("      lineNodes[lineCount] = node;");
+    writer.println("      lines[lineCount++] = token.line;");
+    writer.println("    }");
+    writer.println();
+    writer.println("    private int constant(Object value) {");
+    writer.println("      Object key = value == null ? Encoder.class : value;");
+    writer.println("      Integer index = constantIndices.get(key);");
+    writer.println("      if (index == null) {");
+    writer.println("        index = constants.size();");
+    writer.println("        constants.add(value);");
+    writer.println("        constantIndices.put(key, index);");
+    writer.println("      }");
+    writer.println("      return index;");
+    writer.println("    }");
+    writer.println();
+    writer.println("    private int expr(Expr expr) {");
+    writer.println("      return expr == null ? -1 : expr.accept(this);");
+    writer.println("    }");
+    writer.println();
+    writer.println("    private int stmt(Stmt stmt) {");
+    writer.println("      return stmt == null ? -1 : stmt.accept(this);");
+    writer.println("    }");
+    writer.println();
+    writer.println("    private int list(int[] elements) {");
+    writer.println("      if (listCount + elements.length + 1 > lists.length) {");
+    writer.println("        lists = Arrays.copyOf(lists, Math.max(lists.length * 2, listCount + elements.length + 1));");
+    writer.println("      }");
+    writer.println("      int list = listCount;");
+    writer.println("      lists[listCount++] = elements.length;");
+    writer.println("      System.arraycopy(elements, 0, lists, listCount, elements.length);");
+    writer.println("      listCount += elements.length;");
+    writer.println("      return list;");
+    writer.println("    }");
+    writer.println();
+    writer.println("    private int exprs(List<? extends Expr> exprs) {");
+    writer.println("      int[] elements = new int[exprs.size()];");
+    writer.println("      for (int i = 0; i < elements.length; i++) elements[i] = expr(exprs.get(i));");
+    writer.println("      return list(elements);");
+    writer.println("    }");
+    writer.println();
+    writer.println("    int stmts(List<? extends Stmt> stmts) {");
+    writer.println("      int[] elements = new int[stmts.size()];");
+    writer.println("      for (int i = 0; i < elements.length; i++) elements[i] = stmt(stmts.get(i));");
+    writer.println("      return list(elements);");
+    writer.println("    }");
+    writer.println();
+    writer.println("    private int tokens(List<Token> tokens) {");
+    writer.println("      int[] elements = new int[tokens.size()];");
+    writer.println("      for (int i = 0; i < elements.length; i++) elements[i] = constant(tokens.get(i).lexeme);");
+    writer.println("      return list(elements);");
+    writer.println("    }");
+    writer.println("  }");
+  }
+
+  private static void defineFlatDecoder(PrintWriter writer, List<String[]> types) {
+    writer.println();
+    writer.println("  private static final class Decoder {");
+    writer.println("    private final FlatAst ast;");
+    writer.println("    private final int[] nodes;");
+    writer.println("    private final Interpreter interpreter;");
+    writer.println();
+    writer.println("    Decoder(FlatAst ast, Interpreter interpreter) {");
+    writer.println("      this.ast = ast;");
+    writer.println("      this.nodes = ast.nodes;");
+    writer.println("      this.interpreter = interpreter;");
+    writer.println("    }");
+
+    for (String baseName : Arrays.asList("Expr", "Stmt")) {
+      writer.println();
+      writer.println("    " + baseName + " " + baseName.toLowerCase() + "(int node) {");
+      writer.println("      if (node == -1) return null;");
+      writer.println();
+      writer.println("      switch (ast.kind(node)) {");
+
+      for (String[] type : types) {
+        if (!type[0].equals(baseName)) continue;
+        String className = className(type[1]);
+        String prefix = constantName(className + baseName);
+
+        List<String> arguments = new ArrayList<>();
+        String fieldList = type[1].split(":")[1].trim();
+        if (!fieldList.isEmpty()) {
+          for (String field : fieldList.split(", ")) {
+            String fieldType = field.split(" ")[0];
+            String name = field.split(" ")[1];
+            String value = "nodes[node + " + prefix + "_" + constantName(name) + "]";
+
+            if (fieldType.equals("Token")) {
+              if (name.equals("operator")) {
+                arguments.add("operator(" + value + ", node)");
+              } else if (name.equals("keyword")) {
+                arguments.add("keyword(" + value + ", node)");
+              } else if (name.equals("paren")) {
+                arguments.add("token(TokenType.RIGHT_PAREN, " + value + ", node)");
+              } else {
+                arguments.add("token(TokenType.IDENTIFIER, " + value + ", node)");
+              }
+            } else if (fieldType.equals("Object")) {
+              arguments.add("ast.constants[" + value + "]");
+            } else if (fieldType.equals("List<Token>")) {
+              arguments.add("tokens(" + value + ", node)");
+            } else if (fieldType.startsWith("List<Expr")) {
+              arguments.add("exprs(" + value + ")");
+            } else if (fieldType.startsWith("List<Stmt")) {
+              String element = fieldType.substring("List<".length(), fieldType.length() - 1);
+              arguments.add("stmts(" + value + ", " + element + ".class)");
+            } else if (fieldType.startsWith("Expr") || fieldType.startsWith("Stmt")) {
+              // note: expr() and stmt() return the base types, so only a subclass (Expr.Function) needs a cast.
+              String cast = fieldType.contains(".") ? "(" + fieldType + ")" : "";
+              arguments.add(cast + fieldType.substring(0, 4).toLowerCase() + "(" + value + ")");
+            } else {
+              arguments.add("null");
+            }
+          }
+        }
+
+        writer.println("        case " + prefix + ": {");
+        writer.println("          " + baseName + "." + className + " " + baseName.toLowerCase() + " = new " +
+            baseName + "." + className + "(" + String.join(",\n              ", arguments) + ");");
+        if (RESOLVED_TYPES.contains(className + baseName)) {
+          writer.println("          resolve(" + baseName.toLowerCase() + ", node + " + prefix + "_DISTANCE, node + " +
+              prefix + "_SLOT);");
+        }
+        writer.println("          return " + baseName.toLowerCase() + ";");
+        writer.println("        }");
+      }
+
+      writer.println("        default:");
+      writer.println("          throw new IllegalStateException(\"Not " + (baseName.equals("Expr") ? "an " : "a ") +
+          baseName + " node: \" + ast.kind(node));");
+      writer.println("      }");
+      writer.println("    }");
+    }
+
+    writer.println();
+    writer.println("    private void resolve(Expr expr, int distance, int slot) {");
+    writer.println("      if (nodes[distance] != -1) {");
+    writer.println("        interpreter.resolve(expr, new ResolvedVarInfo(nodes[distance], nodes[slot]));");
+    writer.println("      }");
+    writer.println("    }");
+    writer.println();
+    writer.println("    private Token token(TokenType type, int constant, int node) {");
+    writer.println("      return new Token(type, (String)ast.constants[constant], null, ast.line(node));");
+    writer.println("    }");
+    writer.println();
+    writer.println("    private Token operator(int opcode, int node) {");
+    writer.println("      Opcode op = OPCODES[opcode];");
+    writer.println("      return new Token(TokenType.valueOf(op.name()), op.lexeme, null, ast.line(node));");
+    writer.println("    }");
+    writer.println();
+    writer.println("    // 'this' or 'return'.");
+    writer.println("    private Token keyword(int constant, int node) {");
+    writer.println("      String lexeme = (String)ast.constants[constant];");
+    writer.println("      return new Token(TokenType.valueOf(lexeme.toUpperCase()), lexeme, null, ast.line(node));");
+    writer.println("    }");
+    writer.println();
+    writer.println("    private List<Token> tokens(int list, int node) {");
+    writer.println("      List<Token> tokens = new ArrayList<>();");
+    writer.println("      for (int i = 1; i <= ast.lists[list]; i++) {");
+    writer.println("        tokens.add(token(TokenType.IDENTIFIER, ast.lists[list + i], node));");
+    writer.println("      }");
+    writer.println("      return tokens;");
+    writer.println("    }");
+    writer.println();
+    writer.println("    private List<Expr> exprs(int list) {");
+    writer.println("      List<Expr> exprs = new ArrayList<>();");
+    writer.println("      for (int i = 1; i <= ast.lists[list]; i++) exprs.add(expr(ast.lists[list + i]));");
+    writer.println("      return exprs;");
+    writer.println("    }");
+    writer.println();
+    writer.println("    <T extends Stmt> List<T> stmts(int list, Class<T> type) {");
+    writer.println("      List<T> stmts = new ArrayList<>();");
+    writer.println("      for (int i = 1; i <= ast.lists[list]; i++) stmts.add(type.cast(stmt(ast.lists[list + i])));");
+    writer.println("      return stmts;");
+    writer.println("    }");
+    writer.println("  }");
+  }
+
+  private static String className(String type) {
+    return type.split(":")[0].trim();
+  }
+
+  // the fields a node has in the flat encoding, as {type, name} pairs. fields of other types (e.g. a lazy
+  // function body) have no flat representation and are left out.
+  private static List<String[]> flatFields(String[] type) {
+    List<String[]> fields = new ArrayList<>();
+    String fieldList = type[1].split(":")[1].trim();
+    if (!fieldList.isEmpty()) {
+      for (String field : fieldList.split(", ")) {
+        String[] parts = field.split(" ");
+        if (parts[0].equals("Token") || parts[0].equals("Object") || parts[0].startsWith("List<") ||
+            parts[0].startsWith("Expr") || parts[0].startsWith("Stmt")) {
+          fields.add(parts);
+        }
+      }
+    }
+
+    if (RESOLVED_TYPES.contains(className(type[1]) + type[0])) {
+      fields.add(new String[] { "int", "distance" });
+      fields.add(new String[] { "int", "slot" });
+    }
+    return fields;
+  }
+
+  // e.g. thenBranch -> THEN_BRANCH
+  private static String constantName(String name) {
+    return name.replaceAll("([a-z])([A-Z])", "$1_$2").toUpperCase();
+  }
+}
@@ -0,0 +1,133 @@
+package com.craftinginterpreters.lox;
+
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// LoxEngine.checkpoint and running from a checkpoint: every fork starts from the prelude's state whatever the
+// forks before it changed, environments, closures and instances included, and checkpoints layer.
+class CheckpointTest {
+  private static final String PRELUDE =
+      "var count = 0;\n" +
+      "fun bump() { count = count + 1; return count; }\n" +
+      "fun counter() { var i = 0; fun next() { i = i + 1; return i; } return next; }\n" +
+      "var next = counter();\n" +
+      "class Box { init(value) { this.value = value; } }\n" +
+      "var box = Box(1);\n" +
+      "var alias = box;\n" +
+      "var outer = Box(box);\n";
+
+  private static final LoxEngine engine = new LoxEngine();
+
+  public static void main(String[] args) throws Exception {
+    restore();
+    sharedInstances();
+    nested();
+    concurrent();
+    errors();
+    Expect.done("CheckpointTest");
+  }
+
+  // a fork that changes globals, a closure's environment and an instance's fields leaves the checkpoint as it was.
+  private static void restore() {
+    Checkpoint checkpoint = checkpoint(null, PRELUDE);
+    String job = "print bump(); print next(); box.value = box.value + 1; print box.value;\n" +
+                 "count = 100; box.extra = true;";
+    Expect.equal("1\n1\n2\n", run(checkpoint, job), "a job mutating the prelude's state");
+    Expect.equal("1\n1\n2\n", run(checkpoint, job), "the same job forked again");
+    Expect.equal("0\n1\n", run(checkpoint, "print count; print box.value;"), "the prelude's state after the jobs");
+    Expect.equal("Undefined property 'extra'.\n[line 1]",
+                 error(checkpoint, "print box.extra;"), "a field a fork added");
+    Expect.equal("Undefined variable 'fresh'.\n[line 1]",
+                 error(checkpoint, "print fresh;"), "a global a fork defined");
+  }
+
+  // an instance reached through several globals and fields is copied once per fork, so a fork sees its writes
+  // through every reference to it.
+  private static void sharedInstances() {
+    Checkpoint checkpoint = checkpoint(null, PRELUDE);
+    Expect.equal("5\n5\ntrue\n", run(checkpoint,
+                 "alias.value = 5; print box.value; print outer.value.value; print box == outer.value;\n" +
+                 "var mine = Box(box); mine.value.value = 6;"),
+                 "writes through one reference to a shared instance");
+    Expect.equal("1\n1\n", run(checkpoint, "print alias.value; print outer.value.value;"),
+                 "the shared instance in the next fork");
+  }
+
+  private static void nested() {
+    Checkpoint base = checkpoint(null, PRELUDE);
+    Checkpoint layer = checkpoint(base, "bump(); next(); box.value = 10; var added = Box(box);");
+    Expect.equal("1\n", run(base, "print bump();"), "the base after a checkpoint was layered on it");
+
+    String job = "print bump(); print next(); print box.value; print added.value.value;\n" +
+                 "box.value = 20; added.value = nil;";
+    Expect.equal("2\n2\n10\n10\n", run(layer, job), "a fork of the layered checkpoint");
+    Expect.equal("2\n2\n10\n10\n", run(layer, job), "the layered checkpoint forked again");
+    Expect.equal("0\n1\n", run(base, "print count; print alias.value;"), "the base after forks of the layer");
+    Expect.equal("Undefined variable 'added'.\n[line 1]",
+                 error(base, "print added;"), "a global the layered prelude defined, in the base");
+
+    // and a layer on the layer, changing an instance the first layer had copied.
+    Checkpoint top = checkpoint(layer, "added.value.value = 30; count = 7;");
+    Expect.equal("8\n30\n30\n", run(top, "print bump(); print box.value; print alias.value;"),
+                 "a fork of a checkpoint two layers up");
+    Expect.equal("2\n10\n", run(layer, "print bump(); print box.value;"), "the layer below it");
+  }
+
+  private static void concurrent() throws Exception {
+    Checkpoint checkpoint = checkpoint(null, PRELUDE);
+    Script job = engine.compile(
+        "for (var i = 0; i < 1000; i = i + 1) { bump(); next(); box.value = box.value + 1; }\n" +
+        "print count; print next(); print alias.value;");
+    ExecutorService pool = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<String>> outputs = new ArrayList<>();
+      for (int i = 0; i < 16; i++) {
+        outputs.add(pool.submit(() -> {
+          StringWriter out = new StringWriter();
+          engine.run(checkpoint, job, null, out);
+          return out.toString();
+        }));
+      }
+      for (Future<String> output : outputs) {
+        Expect.equal("1000\n1001\n1001\n", output.get(), "a fork run concurrently with others");
+      }
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  private static void errors() {
+    Checkpoint broken = checkpoint(null, "var;");
+    Expect.equal(List.of(new Diagnostic(Diagnostic.Kind.COMPILE, 1, " at ';'", "Expect variable name.")),
+                 broken.diagnostics(), "a prelude with a compile error");
+    Expect.equal(broken.diagnostics(), engine.run(broken, engine.compile("print 1;"), null, new StringWriter()),
+                 "running from a checkpoint with errors");
+    Expect.same(broken, engine.checkpoint(broken, engine.compile("print 1;"), new StringWriter()),
+                "layering on a checkpoint with errors");
+
+    Checkpoint failed = checkpoint(checkpoint(null, PRELUDE), "bump();\nnil();");
+    Expect.equal(List.of(new Diagnostic(Diagnostic.Kind.RUNTIME, 2, "", "Can only call functions and classes.")),
+                 failed.diagnostics(), "a layered prelude that fails at runtime");
+  }
+
+  private static Checkpoint checkpoint(Checkpoint base, String prelude) {
+    return engine.checkpoint(base, engine.compile(prelude), new StringWriter());
+  }
+
+  private static String run(Checkpoint checkpoint, String source) {
+    StringWriter out = new StringWriter();
+    List<Diagnostic> diagnostics = engine.run(checkpoint, engine.compile(source), null, out);
+    Expect.equal(List.of(), diagnostics, "diagnostics running <" + source + ">");
+    return out.toString();
+  }
+
+  // the runtime error running `source` stops with.
+  private static String error(Checkpoint checkpoint, String source) {
+    List<Diagnostic> diagnostics = engine.run(checkpoint, engine.compile(source), null, new StringWriter());
+    return diagnostics.size() == 1 ? diagnostics.get(0).toString() : diagnostics.toString();
+  }
+}
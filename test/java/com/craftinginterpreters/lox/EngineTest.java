@@ -0,0 +1,156 @@
+package com.craftinginterpreters.lox;
+
+import java.io.StringWriter;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.script.Bindings;
+import javax.script.Compilable;
+import javax.script.CompiledScript;
+import javax.script.ScriptContext;
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineManager;
+import javax.script.ScriptException;
+
+// the embedding API: LoxEngine, Script and Diagnostic, and the javax.script front over them.
+class EngineTest {
+  public static void main(String[] args) throws Exception {
+    compileErrors();
+    runtimeErrors();
+    bindings();
+    cache();
+    scriptEngine();
+    Expect.done("EngineTest");
+  }
+
+  private static void compileErrors() {
+    LoxEngine engine = new LoxEngine();
+    Script script = engine.compile("print 1 +;\nvar;\nprint \"never\";");
+    Expect.check(script.hasErrors(), "a script with syntax errors has errors");
+    Expect.equal(List.of(new Diagnostic(Diagnostic.Kind.COMPILE, 1, " at ';'", "Expect expression."),
+                         new Diagnostic(Diagnostic.Kind.COMPILE, 2, " at ';'", "Expect variable name.")),
+                 script.diagnostics(), "syntax errors");
+    Expect.equal("[line 1] Error at ';': Expect expression.", script.diagnostics().get(0).toString(),
+                 "a compile error prints the way jlox does");
+
+    StringWriter out = new StringWriter();
+    Expect.equal(script.diagnostics(), engine.run(script, null, out), "running a script with errors");
+    Expect.equal("", out.toString(), "a script with errors doesn't run");
+
+    Script resolution = engine.compile("{ var a = a; print a; }");
+    Expect.equal(List.of(new Diagnostic(Diagnostic.Kind.COMPILE, 1, " at 'a'",
+                                        "Can't read local variable in its own initializer.")),
+                 resolution.diagnostics(), "resolution errors");
+  }
+
+  private static void runtimeErrors() {
+    LoxEngine engine = new LoxEngine();
+    Script script = engine.compile("print \"before\";\nprint -\"text\";\nprint \"after\";");
+    Expect.check(!script.hasErrors(), "a script that fails at runtime compiles");
+
+    StringWriter out = new StringWriter();
+    List<Diagnostic> diagnostics = engine.run(script, null, out);
+    Expect.equal(List.of(new Diagnostic(Diagnostic.Kind.RUNTIME, 2, "", "Operand must be a number.")), diagnostics,
+                 "a runtime error");
+    Expect.equal("Operand must be a number.\n[line 2]", diagnostics.get(0).toString(),
+                 "a runtime error prints the way jlox does");
+    Expect.equal("before\n", out.toString(), "what ran before the runtime error");
+  }
+
+  private static void bindings() {
+    LoxEngine engine = new LoxEngine();
+    Object opaque = new Object();
+    Integer untouched = 7;
+    Map<String, Object> bindings = new HashMap<>();
+    bindings.put("n", 3);
+    bindings.put("greeting", new StringBuilder("hello"));
+    bindings.put("untouched", untouched);
+    bindings.put("opaque", opaque);
+
+    StringWriter out = new StringWriter();
+    Script script = engine.compile("print greeting + \", \" + n;\nn = n + 1;\nvar copy = opaque;\nvar fresh;");
+    Expect.equal(List.of(), engine.run(script, bindings, out), "diagnostics running with bindings");
+    Expect.equal("hello, 3\n", out.toString(), "bindings are Lox values in the script");
+    Expect.equal(4.0, bindings.get("n"), "an assigned binding comes back as a Lox number");
+    Expect.same(untouched, bindings.get("untouched"), "a binding the script didn't assign");
+    Expect.equal("hello", bindings.get("greeting").toString(), "a binding the script didn't assign");
+    Expect.same(opaque, bindings.get("copy"), "an opaque value passed through the script");
+    Expect.check(bindings.containsKey("fresh") && bindings.get("fresh") == null,
+                 "a global the script defined without a value comes back as null");
+    Expect.check(!bindings.containsKey("clock"), "natives aren't written back");
+
+    // read-only bindings are read, and nothing is written back to them.
+    out = new StringWriter();
+    Expect.equal(List.of(), engine.run(engine.compile("print n * 2; n = 1;"), Map.of("n", 21), out),
+                 "diagnostics running with read-only bindings");
+    Expect.equal("42\n", out.toString(), "a read-only binding");
+  }
+
+  private static void cache() {
+    LoxEngine engine = new LoxEngine(2);
+    Script first = engine.compile("print 1;");
+    Expect.same(first, engine.compile("print 1;"), "compiling the same source again");
+    Expect.check(first != engine.compile("print 2;"), "another source compiles to another script");
+    Expect.same(first, engine.compile("print 1;"), "a cached script after another was compiled");
+
+    // the cache holds two scripts, so with "print 2;" used after "print 1;", a third evicts "print 1;".
+    engine.compile("print 2;");
+    engine.compile("print 3;");
+    Expect.check(first != engine.compile("print 1;"), "the least recently used script is evicted");
+
+    Script broken = engine.compile("print ;");
+    Expect.same(broken, engine.compile("print ;"), "a script with errors is cached too");
+
+    StringWriter out = new StringWriter();
+    engine.run(first, null, out);
+    engine.run(first, null, out);
+    Expect.equal("1\n1\n", out.toString(), "running one script twice");
+  }
+
+  private static void scriptEngine() throws Exception {
+    ScriptEngine engine = new ScriptEngineManager().getEngineByName("lox");
+    Expect.check(engine != null, "javax.script finds the lox engine");
+    if (engine == null) return;
+
+    StringWriter out = new StringWriter();
+    engine.getContext().setWriter(out);
+    engine.put("x", 2);
+    engine.put("kept", 5);
+    Expect.equal(null, engine.eval("x = x * 21;\nvar y = \"hi\";\nprint y;"), "eval's value");
+    Expect.equal("hi\n", out.toString(), "eval's output");
+    Expect.equal(42.0, engine.get("x"), "an assigned binding");
+    Expect.equal("hi", engine.get("y"), "a global the script defined");
+    Expect.equal(5, engine.get("kept"), "a binding the script didn't assign");
+
+    Bindings global = engine.getBindings(ScriptContext.GLOBAL_SCOPE);
+    if (global != null) {
+      global.put("shared", "global");
+      engine.eval("print shared;");
+      Expect.equal("hi\nglobal\n", out.toString(), "a global scope binding");
+      Expect.check(!engine.getBindings(ScriptContext.ENGINE_SCOPE).containsKey("shared"),
+                   "an unchanged global scope binding stays out of the engine scope");
+    }
+
+    try {
+      engine.eval("print 1 +;");
+      Expect.check(false, "a compile error throws a ScriptException");
+    } catch (ScriptException e) {
+      Expect.equal(1, e.getLineNumber(), "the ScriptException's line");
+      Expect.check(e.getMessage().startsWith("Error at ';': Expect expression."),
+                   "the ScriptException's message, got <" + e.getMessage() + ">");
+    }
+
+    try {
+      engine.eval("\n-nil;");
+      Expect.check(false, "a runtime error throws a ScriptException");
+    } catch (ScriptException e) {
+      Expect.equal(2, e.getLineNumber(), "the ScriptException's line");
+    }
+
+    CompiledScript counter = ((Compilable)engine).compile("count = count + 1;");
+    engine.put("count", 0);
+    counter.eval();
+    counter.eval();
+    Expect.equal(2.0, engine.get("count"), "a compiled script run twice");
+  }
+}
@@ -0,0 +1,35 @@
+package com.craftinginterpreters.lox;
+
+import java.util.Objects;
+
+// checks for the test programs in test/java (make test_java). a failed check is reported and counted, and the
+// program goes on with the rest, then exits with 1 if any failed.
+final class Expect {
+  private static int checks = 0;
+  private static int failures = 0;
+
+  static void equal(Object expected, Object actual, String what) {
+    check(Objects.equals(expected, actual), what + ": expected <" + expected + "> but got <" + actual + ">");
+  }
+
+  // the same object, not just an equal one.
+  static void same(Object expected, Object actual, String what) {
+    check(expected == actual, what + ": expected the same object as <" + expected + "> but got <" + actual + ">");
+  }
+
+  static void check(boolean condition, String failure) {
+    checks++;
+    if (condition) return;
+    failures++;
+    System.out.println("FAILED: " + failure);
+  }
+
+  static void done(String name) {
+    if (failures == 0) {
+      System.out.println(name + ": PASSED (" + checks + " checks)");
+      System.exit(0);
+    }
+    System.out.println(name + ": " + failures + " of " + checks + " checks FAILED");
+    System.exit(1);
+  }
+}
@@ -0,0 +1,92 @@
+package com.craftinginterpreters.lox;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+// the job server (jlox --serve) over in-memory streams: every job gets its response, however it ends, and the
+// client's connection returns once they all have.
+class ServerTest {
+  // note: runs out of memory quickly under the heap make test_java gives the test programs.
+  private static final String OUT_OF_MEMORY = "var s = \"x\"; while (true) s = s + s;";
+
+  public static void main(String[] args) throws Exception {
+    Map<String, String[]> results = serve(Map.of(
+        "ok", "print 1 + 2;",
+        "compile", "print ;",
+        "runtime", "print -nil;",
+        "recursion", "fun f() { f(); } f();",
+        "memory", OUT_OF_MEMORY));
+
+    if (results != null) {
+      expect(results, "ok", "ok", "3\n", "");
+      expect(results, "compile", "compile-error", "", "[line 1] Error at ';': Expect expression.\n");
+      expect(results, "runtime", "runtime-error", "", "Operand must be a number.\n[line 1]\n");
+      expect(results, "recursion", "runtime-error", "", "Stack overflow.\n");
+      String[] memory = results.get("memory");
+      Expect.equal("runtime-error", memory == null ? null : memory[0], "a job that runs out of memory");
+      Expect.check(memory != null && memory[2].startsWith("Internal error: java.lang.OutOfMemoryError"),
+                   "a job that runs out of memory reports it, got <" + (memory == null ? null : memory[2]) + ">");
+    }
+
+    // the server carries on after a failed job.
+    results = serve(Map.of("memory", OUT_OF_MEMORY, "after", "print \"still serving\";"));
+    if (results != null) expect(results, "after", "ok", "still serving\n", "");
+
+    Expect.done("ServerTest");
+  }
+
+  // runs the jobs on one connection, and returns each one's status, output and errors by id. null if the
+  // connection didn't return.
+  private static Map<String, String[]> serve(Map<String, String> jobs) throws Exception {
+    ByteArrayOutputStream requests = new ByteArrayOutputStream();
+    for (Map.Entry<String, String> job : jobs.entrySet()) {
+      byte[] source = job.getValue().getBytes(StandardCharsets.UTF_8);
+      requests.write(("run " + job.getKey() + " " + source.length + "\n").getBytes(StandardCharsets.UTF_8));
+      requests.write(source);
+    }
+
+    LoxServer server = new LoxServer(2, 16);
+    ByteArrayOutputStream responses = new ByteArrayOutputStream();
+    Thread client = new Thread(() -> {
+      try {
+        server.serve(new ByteArrayInputStream(requests.toByteArray()), responses);
+      } catch (Exception e) {
+        throw new RuntimeException(e);
+      }
+    });
+    client.setDaemon(true);
+    client.start();
+    client.join(20_000);
+    Expect.check(!client.isAlive(), "the connection returns once every job has answered");
+    if (client.isAlive()) return null;
+
+    Map<String, String[]> results = new HashMap<>();
+    byte[] bytes = responses.toByteArray();
+    int position = 0;
+    while (position < bytes.length) {
+      int end = position;
+      while (bytes[end] != '\n') end++;
+      String[] header = new String(bytes, position, end - position, StandardCharsets.UTF_8).split(" ");
+      position = end + 1;
+      int outLength = Integer.parseInt(header[5]);
+      int errLength = Integer.parseInt(header[6]);
+      String out = new String(bytes, position, outLength, StandardCharsets.UTF_8);
+      String err = new String(bytes, position + outLength, errLength, StandardCharsets.UTF_8);
+      position += outLength + errLength;
+      results.put(header[1], new String[] {header[2], out, err});
+    }
+    Expect.equal(jobs.keySet(), results.keySet(), "the jobs that got a response");
+    return results;
+  }
+
+  private static void expect(Map<String, String[]> results, String id, String status, String out, String err) {
+    String[] result = results.get(id);
+    if (result == null) return;
+    Expect.equal(status, result[0], id + "'s status");
+    Expect.equal(out, result[1], id + "'s output");
+    Expect.equal(err, result[2], id + "'s errors");
+  }
+}
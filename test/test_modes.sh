@@ -0,0 +1,214 @@
+#!/bin/bash
+
+# Runs the test suite under each jlox mode that mustn't change what a script prints, and compared against the
+# same expected output (see test_runner.sh). where a mode is documented to differ for a test, e.g. --lazy not
+# reporting errors in bodies that never run or --stream having run what comes before an error, its expected
+# output is in expected/<option>/.
+
+cd "$(dirname "$0")"
+failed=0
+
+# run_mode <jlox options...>: the whole suite under those options. `label` names the run, if it's set.
+run_mode() {
+    output=$(./test_runner.sh "$@")
+    if [ $? -eq 0 ]; then
+        echo "✓ ${label:-jlox $*}: PASSED"
+    else
+        echo "$output" | grep -v '^Running\|^✓\|^$'
+        echo "✗ ${label:-jlox $*}: FAILED"
+        failed=$((failed + 1))
+    fi
+}
+
+# run_batch: the suite in one JVM with jlox --batch, which compares against expected/ itself.
+run_batch() {
+    output=$(../jlox --batch .)
+    if [ $? -eq 0 ]; then
+        echo "✓ jlox --batch: PASSED"
+    else
+        echo "$output" | grep -v 'PASSED'
+        echo "✗ jlox --batch: FAILED"
+        failed=$((failed + 1))
+    fi
+}
+
+# run_daemon: the suite through the jlox launcher with a daemon running. plain scripts run in the daemon, and
+# anything with options (--lazy, say) still runs locally.
+run_daemon() {
+    if [ ! -x ../build/jloxc ]; then
+        echo "- jlox --daemon: skipped, build the client with \`make jloxc\`"
+        return
+    fi
+
+    local socket
+    socket="$(mktemp -d)/jlox.sock"
+    java -cp ../build/java com.craftinginterpreters.lox.Lox --daemon "$socket" &
+    local daemon=$!
+    for _ in $(seq 100); do
+        [ -S "$socket" ] && break
+        sleep 0.1
+    done
+
+    JLOX_DAEMON="$socket" label="jlox via --daemon" run_mode
+    JLOX_DAEMON="$socket" label="jlox --lazy with a daemon running" run_mode --lazy
+
+    kill $daemon
+    wait $daemon 2> /dev/null
+    rm -rf "$(dirname "$socket")"
+}
+
+# check_incremental: for each test, the diagnostics of jlox --check, after an edit to the buffer, must be the
+# compile errors a full run reports. the edits (removing a leading space or a leading line) leave every
+# declaration but the first to be reused, shifted.
+check_incremental() {
+    local mismatches=0
+    for file in *.lox; do
+        full=$(../jlox "$file" 2>&1)
+        [ $? -eq 65 ] || full=""
+        for edit in ' ' '\n'; do
+            incremental=$({ printf "$edit"; cat "$file"; printf '\0'; cat "$file"; } | ../jlox --check 2>&1 |
+                          awk '/^(ok|error) \(reparsed/ { updates++; next } updates == 1')
+            if [ "$full" != "$incremental" ]; then
+                echo "✗ $file: after removing a leading '$edit', --check reports"
+                echo "$incremental" | sed 's/^/    /'
+                echo "  but a full run"
+                echo "$full" | sed 's/^/    /'
+                mismatches=$((mismatches + 1))
+            fi
+        done
+    done
+
+    if [ $mismatches -eq 0 ]; then
+        echo "✓ jlox --check: PASSED"
+    else
+        echo "✗ jlox --check: FAILED"
+        failed=$((failed + 1))
+    fi
+}
+
+# check_observer <option> <report>: for each test, jlox <option> must print what a plain run prints and exit the
+# same way, with the same diagnostics first on stderr. where the script ran, the report that follows them (and
+# <script>.folded, for --sample) must match the grep pattern <report>.
+check_observer() {
+    local option=$1 pattern=$2 mismatches=0
+    local dir
+    dir=$(mktemp -d)
+    for file in *.lox; do
+        ../jlox "$file" > "$dir/plain.out" 2> "$dir/plain.err"
+        local plain=$?
+        ../jlox "$option" "$file" > "$dir/out" 2> "$dir/err"
+        local code=$?
+        if [ -f "$file.folded" ]; then
+            cat "$file.folded" >> "$dir/err"
+            rm "$file.folded"
+        fi
+        local diagnostics report
+        diagnostics=$(cat "$dir/plain.err")
+        report=$(cat "$dir/err")
+
+        local problem=""
+        if [ $code -ne $plain ]; then
+            problem="exits $code, not $plain"
+        elif ! cmp -s "$dir/plain.out" "$dir/out"; then
+            problem="prints something else"
+        elif [[ "$report" != "$diagnostics"* ]]; then
+            problem="reports other diagnostics"
+        elif [ $plain -ne 65 ] && ! grep -Eq "$pattern" <<< "${report#"$diagnostics"}"; then
+            problem="has no report"
+        fi
+        if [ -n "$problem" ]; then
+            echo "✗ $file: jlox $option $problem"
+            mismatches=$((mismatches + 1))
+        fi
+    done
+    rm -rf "$dir"
+
+    if [ $mismatches -eq 0 ]; then
+        echo "✓ jlox $option: PASSED"
+    else
+        echo "✗ jlox $option: FAILED"
+        failed=$((failed + 1))
+    fi
+}
+
+# check_usage: options that can't be used together are refused, with exit code 64 and the reason on stderr.
+check_usage() {
+    local problems=""
+    while read -r args; do
+        read -r expected
+        error=$(../jlox $args 2>&1 >/dev/null)
+        code=$?
+        if [ $code -ne 64 ] || [ "$error" != "$expected" ]; then
+            problems+="jlox $args: exit code $code, \"$error\" instead of \"$expected\""$'\n'
+        fi
+    done <<'END'
+--serve --daemon socket
+--serve and --daemon can't be used together.
+--serve --lazy
+--serve doesn't take --lazy.
+--concurrency=2 script
+--concurrency needs --serve or --batch.
+--lazy --pgo --flat script
+--flat and --pgo can't be used together.
+--pgo script
+--pgo needs --lazy.
+--profile --sample=10 script
+--profile and --sample can't be used together.
+--check script
+--check takes no script.
+one two
+jlox takes one script at most.
+--stats=json
+--stats needs a script.
+END
+    if [ -z "$problems" ]; then
+        echo "✓ jlox usage errors: PASSED"
+    else
+        echo -n "$problems"
+        echo "✗ jlox usage errors: FAILED"
+        failed=$((failed + 1))
+    fi
+}
+
+check_usage
+run_mode --lazy
+run_mode --flat
+# instanceof chains instead of the visitors, see Interpreter.PATTERN_DISPATCH.
+JLOX_JAVA_OPTIONS=-Dlox.dispatch=pattern label="jlox with -Dlox.dispatch=pattern" run_mode
+run_mode --stream
+run_mode --lazy --stream
+
+# a cold run stores every script, a warm one runs them from the cache.
+export JLOX_CACHE_DIR=$(mktemp -d)
+run_mode --cache
+run_mode --cache
+rm -rf "$JLOX_CACHE_DIR"
+unset JLOX_CACHE_DIR
+
+# the first run records each script's profile next to it, the second compiles the bodies it called ahead of
+# the script starting.
+rm -f *.profile
+run_mode --lazy --pgo
+run_mode --lazy --pgo
+rm -f *.profile
+
+run_daemon
+run_batch
+check_incremental
+
+# the profilers and --stats only observe a run, so they mustn't change it either.
+check_observer --profile '^ *calls +self ms'
+# note: a test can finish before the first sample's taken, leaving <script>.folded empty.
+check_observer --sample '^(<script>(;[^;]+)* [0-9]+)?$'
+check_observer --allocations '^allocation sites'
+check_observer --stats '^phase +wall ms'
+check_observer --stats=json '^\{"phases":'
+
+echo "=========================================="
+if [ $failed -eq 0 ]; then
+    echo "✅ All modes passed!"
+    exit 0
+else
+    echo "❌ $failed mode(s) failed"
+    exit 1
+fi
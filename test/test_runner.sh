@@ -2,10 +2,17 @@
 
 # Basic testing strategy for Lox
 # generate output in test/actual and compare against test/expected
+#
+# Any arguments are passed to jlox before each script (e.g. `test_runner.sh --lazy`). Their output goes to
+# test/actual/<options>/, and where a mode is documented to print something else for a test, the expected
+# output for it is in test/expected/<option>/, or test/expected/<options>/ where several options together print
+# something else again (see test_modes.sh).
 
 # Change to the directory where this script is located
 cd "$(dirname "$0")"
-mkdir -p actual
+mode=$(IFS=_; echo "${*#--}")
+actual_dir="actual${mode:+/$mode}"
+mkdir -p "$actual_dir"
 
 # Track test results
 passed=0
@@ -19,16 +26,24 @@ for file in *.lox; do
     total=$((total + 1))
 
     # Run jlox and save output to _actual.txt file (overwrite existing)
-    echo "Running jlox on $file..."
-    ../jlox "$file" >| "actual/${filename}_actual.txt" 2>&1
+    echo "Running jlox $* on $file..."
+    ../jlox "$@" "$file" >| "${actual_dir}/${filename}_actual.txt" 2>&1
     jlox_exit_code=$?
 
     # Always report that output was saved (even if jlox had errors)
-    echo "✓ Output saved to actual/${filename}_actual.txt"
+    echo "✓ Output saved to ${actual_dir}/${filename}_actual.txt"
 
     # Compare with expected output if it exists
     expected_file="expected/${filename}_expected.txt"
-    actual_file="actual/${filename}_actual.txt"
+    for option in "$@"; do
+        if [ -f "expected/${option#--}/${filename}_expected.txt" ]; then
+            expected_file="expected/${option#--}/${filename}_expected.txt"
+        fi
+    done
+    if [ -n "$mode" ] && [ -f "expected/${mode}/${filename}_expected.txt" ]; then
+        expected_file="expected/${mode}/${filename}_expected.txt"
+    fi
+    actual_file="${actual_dir}/${filename}_actual.txt"
 
     if [ -f "$expected_file" ]; then
         if diff -q "$expected_file" "$actual_file" > /dev/null 2>&1; then
@@ -0,0 +1,102 @@
+// thin client for a running `jlox --daemon <socket>`. it forwards the working directory and its arguments to
+// the daemon named by $JLOX_DAEMON, copies what the script prints to stdout and stderr, and exits with the
+// script's exit code. see LoxDaemon.java for the protocol.
+//
+// build with `make jloxc`. the jlox launcher uses it automatically when $JLOX_DAEMON is a socket.
+
+#include <limits.h>
+#include <stdio.h>
+#include <stdlib.h>
+#include <string.h>
+#include <sys/socket.h>
+#include <sys/un.h>
+#include <unistd.h>
+
+static int sendAll(int fd, const char* data, size_t length) {
+  while (length > 0) {
+    ssize_t written = write(fd, data, length);
+    if (written <= 0) return 0;
+    data += written;
+    length -= (size_t)written;
+  }
+  return 1;
+}
+
+static int sendFrame(int fd, const char* name, const char* value) {
+  char header[64];
+  size_t length = strlen(value);
+  int headerLength = snprintf(header, sizeof(header), "%s %zu\n", name, length);
+  return sendAll(fd, header, (size_t)headerLength) && sendAll(fd, value, length);
+}
+
+// reads a header line into `line` (without its '\n'). returns 0 at the end of the input.
+static int readLine(FILE* in, char* line, size_t size) {
+  if (fgets(line, (int)size, in) == NULL) return 0;
+  line[strcspn(line, "\n")] = '\0';
+  return 1;
+}
+
+// copies `length` bytes of a frame body to fd.
+static int copyBody(FILE* in, int fd, long length) {
+  char buffer[8192];
+  while (length > 0) {
+    size_t chunk = length < (long)sizeof(buffer) ? (size_t)length : sizeof(buffer);
+    size_t read = fread(buffer, 1, chunk, in);
+    if (read == 0) return 0;
+    if (!sendAll(fd, buffer, read)) return 0;
+    length -= (long)read;
+  }
+  return 1;
+}
+
+int main(int argc, const char* argv[]) {
+  const char* path = getenv("JLOX_DAEMON");
+  if (path == NULL || path[0] == '\0') {
+    fprintf(stderr, "jloxc: JLOX_DAEMON isn't set.\n");
+    return 1;
+  }
+
+  struct sockaddr_un address;
+  memset(&address, 0, sizeof(address));
+  address.sun_family = AF_UNIX;
+  if (strlen(path) >= sizeof(address.sun_path)) {
+    fprintf(stderr, "jloxc: socket path is too long: %s\n", path);
+    return 1;
+  }
+  strcpy(address.sun_path, path);
+
+  int fd = socket(AF_UNIX, SOCK_STREAM, 0);
+  if (fd < 0 || connect(fd, (struct sockaddr*)&address, sizeof(address)) < 0) {
+    fprintf(stderr, "jloxc: can't connect to the jlox daemon at %s.\n", path);
+    return 1;
+  }
+
+  char cwd[PATH_MAX];
+  if (getcwd(cwd, sizeof(cwd)) == NULL) {
+    perror("jloxc");
+    return 1;
+  }
+
+  int sent = sendFrame(fd, "cwd", cwd);
+  for (int i = 1; sent && i < argc; i++) {
+    sent = sendFrame(fd, "arg", argv[i]);
+  }
+  if (!sent || !sendAll(fd, "run\n", 4)) {
+    fprintf(stderr, "jloxc: lost the connection to the jlox daemon.\n");
+    return 1;
+  }
+
+  FILE* in = fdopen(fd, "r");
+  char line[64];
+  while (readLine(in, line, sizeof(line))) {
+    char kind;
+    long value;
+    if (sscanf(line, "%c %ld", &kind, &value) != 2) break;
+
+    if (kind == 'x') return (int)value;
+    if ((kind != '1' && kind != '2') || !copyBody(in, kind - '0', value)) break;
+  }
+
+  fprintf(stderr, "jloxc: lost the connection to the jlox daemon.\n");
+  return 1;
+}
@@ -0,0 +1,38 @@
+#!/usr/bin/env bash
+
+# Reports jlox's time to first output on each test/*.lox script (the mean of a few runs), with and without the
+# class-data sharing archive from `make cds`.
+
+cd "$(dirname "$0")/.."
+runs=${RUNS:-5}
+
+if [[ ! -f build/jlox.jsa ]]; then
+  echo "No build/jlox.jsa. Run make cds first."
+  exit 1
+fi
+
+# milliseconds from starting jlox until it has written its first line (stdout or stderr).
+first_output() {
+  local start end
+  start=$(date +%s%N)
+  { read -r _; end=$(date +%s%N); cat > /dev/null; } < <(JLOX_CDS=$1 ./jlox "$2" 2>&1)
+  echo $(( (end - start) / 1000000 ))
+}
+
+printf "%-32s %10s %10s\n" script "no cds ms" "cds ms"
+total_without=0
+total_with=0
+count=0
+for script in test/*.lox; do
+  without=0
+  with=0
+  for ((i = 0; i < runs; i++)); do
+    without=$((without + $(first_output 0 "$script")))
+    with=$((with + $(first_output 1 "$script")))
+  done
+  printf "%-32s %10d %10d\n" "$(basename "$script")" $((without / runs)) $((with / runs))
+  total_without=$((total_without + without / runs))
+  total_with=$((total_with + with / runs))
+  count=$((count + 1))
+done
+printf "%-32s %10d %10d\n" mean $((total_without / count)) $((total_with / count))